@@ -0,0 +1,59 @@
+package net.bobacus.soundgen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jatha.Jatha;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Starting an interpreter from scratch, as {@link TuneEvaluator} does, against restoring one from an image held in
+ * memory, as {@link InterpreterImage} and {@link InterpreterPool} do. Scores are milliseconds per interpreter. These
+ * are warm timings; the time to start the first interpreter in a new JVM, which is mostly class loading, can be
+ * measured with {@code -bm ss -wi 0 -i 1 -f 10}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    private byte[] image;
+
+    @Setup
+    public void setup() throws IOException {
+        Jatha lisp = new Jatha(false, false);
+        lisp.init();
+        lisp.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        lisp.saveImage(out);
+        image = out.toByteArray();
+    }
+
+    @Benchmark
+    public Jatha init() {
+        Jatha lisp = new Jatha(false, false);
+        lisp.init();
+        lisp.start();
+        return lisp;
+    }
+
+    @Benchmark
+    public Jatha restore() throws IOException {
+        return Jatha.loadImage(new ByteArrayInputStream(image));
+    }
+
+}
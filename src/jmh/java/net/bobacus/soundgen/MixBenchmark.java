@@ -0,0 +1,97 @@
+package net.bobacus.soundgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.bobacus.soundgen.sampler.SampleChunk;
+import net.bobacus.soundgen.sampler.Sampler;
+import net.bobacus.soundgen.sampler.SamplerParams;
+
+/**
+ * The mixing and PCM conversion in {@link MultiChannelPlayer#play}, with samplers that do no synthesis
+ * and an output that discards the data. With more than one output, the channels are panned evenly across them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixBenchmark {
+
+    private static final int SAMPLES = 44100 * 2;
+
+    @Param({"1", "4", "8"})
+    public int channels;
+
+    @Param({"false", "true"})
+    public boolean singlePrecision;
+
+    @Param({"1", "2"})
+    public int outputs;
+
+    private SamplerParams params;
+    private final MultiChannelPlayer player = new MultiChannelPlayer();
+    private List<Sampler> samplers;
+
+    @Setup
+    public void setup() {
+        params = new SamplerParams(44100, 16, outputs, singlePrecision);
+        samplers = new ArrayList<>();
+        for (int c = 0; c < channels; c++) {
+            double value = 0.1 * (c + 1);
+            double pan = (channels == 1 ? 0 : -1 + 2.0 * c / (channels - 1));
+            samplers.add(new Sampler() {
+                public Iterator<SampleChunk> getSamples(int duration, int start) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void getSamples(double[] buffer, int offset, int duration, int start) {
+                    Arrays.fill(buffer, offset, offset + duration, value);
+                }
+
+                @Override
+                public void getSamples(float[] buffer, int offset, int duration, int start) {
+                    Arrays.fill(buffer, offset, offset + duration, (float) value);
+                }
+
+                @Override
+                public double getPan() {
+                    return pan;
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void play(Blackhole bh) {
+        player.play(samplers, SAMPLES, params, new AudioOutput() {
+            public void write(byte[] data, int offset, int length) {
+                bh.consume(data);
+            }
+
+            public void close() {
+            }
+        });
+    }
+
+}
@@ -0,0 +1,75 @@
+package net.bobacus.soundgen.effect;
+
+import java.util.Collections;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Each effect, as given in a tune, processing blocks of noise at 44.1kHz, for comparison with SynthBenchmark to give
+ * the cost of an effect relative to synthesis.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EffectBenchmark {
+
+    private static final int SAMPLES = 4096;
+
+    @Param({"gain 0.5", "clip 2", "lowpass 1000", "delay 0.25 0.5 0.5", "reverb 0.8 0.5 0.3"})
+    public String effect;
+
+    @Param({"false", "true"})
+    public boolean singlePrecision;
+
+    private EffectChain chain;
+    private final double[] input = new double[SAMPLES];
+    private final double[] buffer = new double[SAMPLES];
+    private final float[] floatBuffer = new float[SAMPLES];
+
+    @Setup
+    public void setup() {
+        String[] words = effect.split(" ");
+        double[] args = new double[words.length - 1];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = Double.parseDouble(words[i + 1]);
+        }
+        chain = EffectSpec.createChain(Collections.singletonList(new EffectSpec(words[0], args)), 44100,
+                SAMPLES);
+        SplittableRandom random = new SplittableRandom(0);
+        for (int i = 0; i < SAMPLES; i++) {
+            input[i] = random.nextDouble() * 2 - 1;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public Object process() {
+        if (singlePrecision) {
+            for (int i = 0; i < SAMPLES; i++) {
+                floatBuffer[i] = (float) input[i];
+            }
+            chain.process(floatBuffer, 0, SAMPLES);
+            return floatBuffer;
+        }
+        System.arraycopy(input, 0, buffer, 0, SAMPLES);
+        chain.process(buffer, 0, SAMPLES);
+        return buffer;
+    }
+
+}
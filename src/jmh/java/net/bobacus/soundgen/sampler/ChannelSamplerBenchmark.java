@@ -0,0 +1,76 @@
+package net.bobacus.soundgen.sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.bobacus.soundgen.channel.Channel;
+import net.bobacus.soundgen.synth.Instruments;
+import net.bobacus.soundgen.synth.Sound;
+import net.bobacus.soundgen.synth.SynthCompiler;
+
+/**
+ * A ChannelSampler playing forward through a channel of many short notes, half a second per chunk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelSamplerBenchmark {
+
+    private static final int SAMPLES = 22050;
+    private static final int NOTES = 20000;
+
+    // deterministic instruments, so that the cache is used
+    private static final int[] INSTRUMENTS = {1, 2, 4, 5, 6};
+    private static final double[] PITCHES = {220, 261.626, 329.628, 440, 523.251, 659.255};
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private ChannelSampler sampler;
+    private int length;
+    private int position = 0;
+    private final double[] buffer = new double[SAMPLES];
+
+    @Setup
+    public void setup() {
+        SamplerParams params = new SamplerParams(44100, 16, 1);
+        List<Sound> sounds = new ArrayList<>(NOTES);
+        for (int i = 0; i < NOTES; i++) {
+            int instrument = INSTRUMENTS[i % INSTRUMENTS.length];
+            double pitch = PITCHES[(i * 7) % PITCHES.length];
+            double duration = 0.05 * (1 + i % 4);
+            sounds.add(new Sound(SynthCompiler.compile(Instruments.mInstruments[instrument].getPitch(pitch)),
+                    duration, instrument, pitch));
+            length += (int) (duration * params.getSampleRate());
+        }
+        sampler = new ChannelSampler(new Channel(sounds.iterator()), params, cached ? new NoteCache(1 << 28) : null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double[] getSamples() {
+        if (position + SAMPLES > length)
+            position = 0;
+        sampler.getSamples(buffer, 0, SAMPLES, position);
+        position += SAMPLES;
+        return buffer;
+    }
+
+}
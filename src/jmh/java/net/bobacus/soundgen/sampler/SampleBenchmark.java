@@ -0,0 +1,67 @@
+package net.bobacus.soundgen.sampler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of samples to 16 bit little-endian PCM with {@link Sample}, a sample at a time, and with
+ * {@link PcmEncoder}, a block at a time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleBenchmark {
+
+    private static final int SAMPLES = 4096;
+
+    private final double[] samples = new double[SAMPLES];
+    private final byte[] data = new byte[SAMPLES * 2];
+    private final PcmEncoder encoder = new PcmEncoder(new SamplerParams(44100, 16, 1), false);
+    private final PcmEncoder ditheringEncoder = new PcmEncoder(new SamplerParams(44100, 16, 1), true);
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = Math.sin(i * 0.01) * 0.9;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public byte[] getLittleAndBigBytes() {
+        for (int i = 0; i < SAMPLES; i++) {
+            data[i * 2] = Sample.getLittleByte(samples[i]);
+            data[i * 2 + 1] = Sample.getBigByte(samples[i]);
+        }
+        return data;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public byte[] encode() {
+        encoder.encode(samples, 0, SAMPLES, 1, 0, data, 0);
+        return data;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public byte[] encodeDithered() {
+        ditheringEncoder.encode(samples, 0, SAMPLES, 1, 0, data, 0);
+        return data;
+    }
+
+}
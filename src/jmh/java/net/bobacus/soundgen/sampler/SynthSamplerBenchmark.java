@@ -0,0 +1,67 @@
+package net.bobacus.soundgen.sampler;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.bobacus.soundgen.synth.Instruments;
+
+/**
+ * One second of the clarinet through a SynthSampler, in chunks of various sizes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SynthSamplerBenchmark {
+
+    private static final int SAMPLES = 44100;
+
+    @Param({"64", "1024", "22050"})
+    public int chunkSize;
+
+    private SynthSampler sampler;
+    private double[] buffer;
+
+    @Setup
+    public void setup() {
+        SamplerParams params = new SamplerParams(44100, 16, 1);
+        sampler = new SynthSampler(Instruments.clarinetTongued.getPitch(440), params);
+        buffer = new double[chunkSize];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void iterator(Blackhole bh) {
+        for (int p = 0; p < SAMPLES; p += chunkSize) {
+            Iterator<SampleChunk> i = sampler.getSamples(Math.min(chunkSize, SAMPLES - p), p);
+            while (i.hasNext())
+                bh.consume(i.next().getSamples());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void buffer(Blackhole bh) {
+        for (int p = 0; p < SAMPLES; p += chunkSize) {
+            sampler.getSamples(buffer, 0, Math.min(chunkSize, SAMPLES - p), p);
+            bh.consume(buffer);
+        }
+    }
+
+}
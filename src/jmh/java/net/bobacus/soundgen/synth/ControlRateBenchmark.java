@@ -0,0 +1,58 @@
+package net.bobacus.soundgen.synth;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A slowly varying modulator (a 5Hz vibrato, shaped by a power, FM'd onto a 440Hz sine) evaluated at audio rate
+ * (interval 0) or at control rate, every given number of samples, with {@link Synth.ControlRate}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControlRateBenchmark {
+
+    private static final int SAMPLES = 4096;
+    private static final double STEP = 1.0 / 44100;
+
+    @Param({"0", "8", "32"})
+    public int interval;
+
+    private Synth synth;
+    private final double[] buffer = new double[SAMPLES];
+    private double position = 0;
+
+    @Setup
+    public void setup() {
+        Synth vibrato = new Synth.Mix2(new Synth.Offset(1),
+                new Synth.Composition(new Synth.Exponential(0.5), new Synth.Sine(5)));
+        Synth modulator = (interval == 0 ? vibrato : new Synth.ControlRate(vibrato, interval * STEP));
+        synth = SynthCompiler.compile(new Synth.FM(Instruments.sine, modulator).getPitch(440));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double[] getValues() {
+        position += SAMPLES * STEP;
+        if (position >= 1)
+            position = 0;
+        synth.getValues(buffer, 0, SAMPLES, position, STEP);
+        return buffer;
+    }
+
+}
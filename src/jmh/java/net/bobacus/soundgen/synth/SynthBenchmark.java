@@ -0,0 +1,79 @@
+package net.bobacus.soundgen.synth;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Synthesis of each instrument in {@link Instruments#mInstruments}, at 440Hz.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SynthBenchmark {
+
+    private static final int SAMPLES = 4096;
+    private static final double STEP = 1.0 / 44100;
+
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7"})
+    public int instrument;
+
+    private Synth synth;
+    private Synth compiled;
+    private final double[] buffer = new double[SAMPLES];
+    private double position = 0;
+
+    @Setup
+    public void setup() {
+        synth = Instruments.mInstruments[instrument].getPitch(440).newVoice(0);
+        compiled = SynthCompiler.compile(synth);
+    }
+
+    // keeps the position moving through the first second, like a note being played
+    private double nextPosition() {
+        position += SAMPLES * STEP;
+        if (position >= 1)
+            position = 0;
+        return position;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double getValue() {
+        double x = nextPosition();
+        double sum = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            sum += synth.getValue(x + i * STEP);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double[] getValues() {
+        synth.getValues(buffer, 0, SAMPLES, nextPosition(), STEP);
+        return buffer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double[] compiledGetValues() {
+        compiled.getValues(buffer, 0, SAMPLES, nextPosition(), STEP);
+        return buffer;
+    }
+
+}
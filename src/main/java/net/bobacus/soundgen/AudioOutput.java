@@ -0,0 +1,28 @@
+package net.bobacus.soundgen;
+
+/**
+ * Destination for the PCM data produced by the {@link MultiChannelPlayer}.
+ */
+interface AudioOutput {
+
+    /**
+     * @param data   PCM data, in the format given by the SamplerParams the output was created with
+     * @param offset index of the first byte to write
+     * @param length number of bytes to write
+     */
+    void write(byte[] data, int offset, int length);
+
+    /**
+     * Finishes output, e.g. waiting for audio to finish playing, or completing a file.
+     */
+    void close();
+
+    /**
+     * Stops output after a failure, when not all the audio could be written, e.g. deleting an incomplete file. By
+     * default, the same as {@link #close()}.
+     */
+    default void abort() {
+        close();
+    }
+
+}
@@ -0,0 +1,276 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jatha.Jatha;
+
+import net.bobacus.soundgen.effect.EffectChain;
+import net.bobacus.soundgen.metrics.RenderMetrics;
+import net.bobacus.soundgen.sampler.NoteCache;
+import net.bobacus.soundgen.sampler.Sampler;
+import net.bobacus.soundgen.sampler.SamplerParams;
+
+/**
+ * Renders many music files to WAV (or raw PCM) files, in parallel, without needing an audio device.
+ * <p>
+ * Each tune is evaluated in its own interpreter from an {@link InterpreterPool}, then rendered on the worker thread
+ * that evaluated it, so there are never more tunes in memory than workers. Rendered notes are shared between the
+ * tunes through one note cache, whose size bounds the memory taken by audio in flight.
+ */
+public class BatchRender {
+
+    private static final String USAGE =
+            "Usage: BatchRender [-o output-dir] [-j workers] [-c megabytes] [-P] [-v voices] [-f] [-b bits] [-d]"
+                    + " [-n channels] [-r seed] [-p prelude] [-i image] (directory | manifest)...";
+
+    /**
+     * Usage: BatchRender [-o output-dir] [-j workers] [-c megabytes] [-P] [-v voices] [-f] [-b bits] [-d]
+     * [-n channels] [-r seed] [-p prelude] [-i image] (directory | manifest)...
+     * <p>
+     * Each argument after the options is either a directory, all of whose .txt files are rendered, or a manifest,
+     * a text file listing one music file per line (relative to the manifest's directory), with blank lines and
+     * lines starting with # ignored. Each tune is written to the output directory (by default the current one),
+     * with the same name but the extension .wav, or .pcm with -P for raw PCM with no header; a tune with the same
+     * name as an earlier one fails, rather than overwriting its output. If a tune fails while it is being rendered,
+     * its incomplete output file is deleted.
+     * With -j, tunes are rendered on the given number of threads (by default, one per processor).
+     * With -c, rendered notes are cached and shared between tunes, up to the given size (64 by default, 0 for no
+     * cache).
+     * The other options are as for {@link SoundGen}. The time each tune took to evaluate and render is printed, with
+     * its realtime factor (the length of the audio divided by that time), or why it failed; the exit status is 1
+     * if any failed.
+     *
+     * @param args the options, followed by the directories and manifests
+     */
+    public static void main(String[] args) {
+        try {
+            BatchRender batch = new BatchRender();
+            List<File> tunes = new ArrayList<>();
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-o") && i + 1 < args.length)
+                    batch.outputDir = new File(args[++i]);
+                else if (args[i].equals("-j") && i + 1 < args.length)
+                    batch.workers = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-c") && i + 1 < args.length)
+                    batch.cacheMegabytes = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-P"))
+                    batch.raw = true;
+                else if (args[i].equals("-v") && i + 1 < args.length)
+                    batch.voices = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-f"))
+                    batch.singlePrecision = true;
+                else if (args[i].equals("-b") && i + 1 < args.length)
+                    batch.setBits(args[++i]);
+                else if (args[i].equals("-d"))
+                    batch.dither = true;
+                else if (args[i].equals("-n") && i + 1 < args.length)
+                    batch.outputChannels = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-r") && i + 1 < args.length)
+                    batch.seed = Long.parseLong(args[++i]);
+                else if (args[i].equals("-p") && i + 1 < args.length)
+                    batch.prelude = new File(args[++i]);
+                else if (args[i].equals("-i") && i + 1 < args.length)
+                    batch.image = new File(args[++i]);
+                else
+                    tunes.addAll(findTunes(new File(args[i])));
+            }
+            if (tunes.isEmpty()) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            if (batch.run(tunes) > 0)
+                System.exit(1);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int NOTE_CACHE_MEGABYTES = 64;
+
+    BatchRender() {
+    }
+
+    /**
+     * @param outputDir the directory to write the rendered files to
+     * @param workers   the number of tunes to render at once
+     */
+    BatchRender(File outputDir, int workers) {
+        this.outputDir = outputDir;
+        this.workers = workers;
+    }
+
+    private File outputDir = new File(".");
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int cacheMegabytes = NOTE_CACHE_MEGABYTES;
+    private boolean raw = false;
+    private int voices = Music.VOICES;
+    private int bits = 16;
+    private boolean floatEncoding = false;
+    private boolean singlePrecision = false;
+    private boolean dither = false;
+    private int outputChannels = 1;
+    private long seed = 0;
+    private File prelude = null;
+    private File image = null;
+
+    private void setBits(String arg) {
+        floatEncoding = arg.endsWith("f");
+        bits = Integer.parseInt(floatEncoding ? arg.substring(0, arg.length() - 1) : arg);
+    }
+
+    /**
+     * @param input a directory of music files, or a manifest listing them
+     * @return the music files, in order
+     */
+    static List<File> findTunes(File input) throws IOException {
+        List<File> tunes = new ArrayList<>();
+        if (input.isDirectory()) {
+            File[] files = input.listFiles((dir, name) -> name.endsWith(".txt"));
+            if (files != null) {
+                Arrays.sort(files);
+                tunes.addAll(Arrays.asList(files));
+            }
+        } else {
+            File dir = input.getAbsoluteFile().getParentFile();
+            for (String line : Files.readAllLines(input.toPath())) {
+                String name = line.trim();
+                if (!name.isEmpty() && !name.startsWith("#")) {
+                    File file = new File(name);
+                    tunes.add(file.isAbsolute() ? file : new File(dir, name));
+                }
+            }
+        }
+        return tunes;
+    }
+
+    /**
+     * Renders the tunes, printing a line for each as it is finished, in order, and a summary at the end.
+     *
+     * @return the number of tunes that failed
+     */
+    int run(List<File> tunes) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        SamplerParams params = new SamplerParams(SAMPLE_RATE, bits, outputChannels, singlePrecision, floatEncoding);
+        NoteCache cache = (cacheMegabytes > 0 ? new NoteCache(cacheMegabytes * 1024L * 1024L) : null);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        double audioSeconds = 0;
+        int failures = 0;
+        try (InterpreterPool pool = new InterpreterPool(InterpreterImage.start(prelude, image), workers)) {
+            List<Future<Result>> results = new ArrayList<>();
+            Map<File, File> outputs = new HashMap<>();
+            for (File tune : tunes) {
+                // tunes with the same name would overwrite each other's output, so only the first is rendered
+                File other = outputs.putIfAbsent(outputFile(tune).getAbsoluteFile(), tune);
+                if (other != null) {
+                    SoundGenException e = new SoundGenException(
+                            "Output file " + outputFile(tune) + " is already used by " + other);
+                    results.add(CompletableFuture.completedFuture(new Result(tune, 0, 0, e)));
+                } else {
+                    results.add(executor.submit(() -> render(tune, pool, params, cache)));
+                }
+            }
+            for (Future<Result> future : results) {
+                Result result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    // render() catches everything a tune can throw, so this is a bug
+                    throw new SoundGenException(e.getCause());
+                }
+                System.out.println(result);
+                if (result.error != null)
+                    failures++;
+                else
+                    audioSeconds += result.audioSeconds;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) * 1e-9;
+        System.out.printf("Rendered %d of %d tunes on %d workers: %.1f s of audio in %.1f s (%.1fx realtime)%n",
+                tunes.size() - failures, tunes.size(), workers, audioSeconds, seconds, audioSeconds / seconds);
+        if (cache != null)
+            System.out.println(cache);
+        return failures;
+    }
+
+    private Result render(File tune, InterpreterPool pool, SamplerParams params, NoteCache cache) {
+        long start = System.nanoTime();
+        try {
+            Music music;
+            List<? extends Sampler> samplers;
+            EffectChain[] master;
+            Jatha lisp = pool.acquire();
+            try {
+                // the score is built eagerly, so the interpreter isn't needed once the samplers exist
+                music = new Music(lisp, new TuneEvaluator(lisp).evaluate(tune), 0, seed);
+                samplers = music.getSamplers(params, cache, RenderMetrics.NONE, voices);
+                master = music.getMasterEffects(params);
+            } finally {
+                pool.release(lisp);
+            }
+            int length = music.getLength(params);
+            write(samplers, master, length, params, outputFile(tune));
+            return new Result(tune, (double) length / params.getSampleRate(), System.nanoTime() - start, null);
+        } catch (Exception | StackOverflowError e) {
+            return new Result(tune, 0, System.nanoTime() - start, e);
+        }
+    }
+
+    /**
+     * Plays the samplers into a file, which is deleted if they fail part way through.
+     *
+     * @param duration the number of samples to write
+     */
+    void write(List<? extends Sampler> samplers, EffectChain[] master, int duration, SamplerParams params,
+               File file) {
+        AudioOutput output = (raw ? new PcmFileOutput(file) : new WavFileOutput(file, params));
+        new MultiChannelPlayer(1, RenderMetrics.NONE, dither).play(samplers, master, duration, params, output);
+    }
+
+    private File outputFile(File tune) {
+        String name = tune.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(outputDir, (dot > 0 ? name.substring(0, dot) : name) + (raw ? ".pcm" : ".wav"));
+    }
+
+    private static final class Result {
+
+        Result(File tune, double audioSeconds, long nanos, Throwable error) {
+            this.tune = tune;
+            this.audioSeconds = audioSeconds;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        private final File tune;
+        private final double audioSeconds;
+        private final long nanos;
+        private final Throwable error;
+
+        @Override
+        public String toString() {
+            double ms = nanos * 1e-6;
+            if (error != null)
+                return String.format("%s: FAILED after %.0f ms: %s", tune, ms, error);
+            return String.format("%s: %.1f s of audio in %.0f ms (%.1fx realtime)", tune, audioSeconds, ms,
+                    audioSeconds * 1000 / ms);
+        }
+    }
+
+}
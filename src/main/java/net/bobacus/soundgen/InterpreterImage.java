@@ -0,0 +1,74 @@
+package net.bobacus.soundgen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.jatha.Jatha;
+
+/**
+ * Starts interpreters from a saved image, so that Jatha's init files and a prelude of the user's own definitions
+ * don't have to be parsed and compiled again for every tune.
+ * <p>
+ * The image is used if it is at least as new as the prelude. Otherwise (or if it can't be read) the interpreter is
+ * started cold, the prelude is evaluated in it, and the image is written again for next time. If the image can't be
+ * written, e.g. because the prelude made a hash table, which can't be saved, the cold interpreter is used anyway.
+ */
+final class InterpreterImage {
+
+    private InterpreterImage() {
+    }
+
+    /**
+     * @param prelude a file of blocks (each ended by a line containing just a full stop) to evaluate before the tune,
+     *                or null for none
+     * @param image   the image file, or null to always start cold
+     * @return a started interpreter, with the prelude evaluated
+     */
+    static Jatha start(File prelude, File image) throws IOException {
+        if (image != null && image.isFile() && (prelude == null || image.lastModified() >= prelude.lastModified())) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(image))) {
+                return Jatha.loadImage(in);
+            } catch (IOException e) {
+                System.err.println("Can't restore " + image + ", starting from scratch: " + e.getMessage());
+            }
+        }
+
+        Jatha lisp = new Jatha(false, false);
+        lisp.init();
+        lisp.start();
+        if (prelude != null)
+            new TuneEvaluator(lisp).evaluate(prelude);
+        if (image != null) {
+            try {
+                save(lisp, image);
+            } catch (IOException e) {
+                System.err.println("Can't save " + image + ", carrying on without it: " + e.getMessage());
+            }
+        }
+        return lisp;
+    }
+
+    // written to a temporary file first, so that another process never restores half an image
+    private static void save(Jatha lisp, File image) throws IOException {
+        File dir = image.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(image.getName(), ".tmp", dir);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                lisp.saveImage(out);
+            }
+            Files.move(temp.toPath(), image.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+}
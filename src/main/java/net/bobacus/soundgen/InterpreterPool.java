@@ -0,0 +1,94 @@
+package net.bobacus.soundgen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jatha.Jatha;
+
+/**
+ * A pool of interpreters, all in the same state as a template interpreter, for evaluating tunes concurrently.
+ * <p>
+ * The template is saved once as an image in memory, which is all the pool shares, and each interpreter handed out is
+ * restored from it, so is isolated from the others and from the template. An interpreter given back is not used
+ * again, since a tune can change any part of an interpreter's state; instead, a fresh one is restored in the
+ * background, so that up to the pool's size are kept ready to hand out without waiting.
+ * <p>
+ * Thread-safe, though each interpreter must only be used by one thread at a time.
+ */
+final class InterpreterPool implements AutoCloseable {
+
+    /**
+     * @param template the interpreter to copy, e.g. with a prelude evaluated; it is not used after this returns
+     * @param size     the number of interpreters to keep ready
+     */
+    InterpreterPool(Jatha template, int size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.saveImage(out);
+        image = out.toByteArray();
+        spares = new ArrayBlockingQueue<>(Math.max(1, size));
+        refiller = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "interpreter-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refiller.execute(this::refill);
+    }
+
+    private final byte[] image;
+    private final BlockingQueue<Jatha> spares;
+    private final ExecutorService refiller;
+
+    /**
+     * @return the size in bytes of the image the interpreters are restored from
+     */
+    int getImageSize() {
+        return image.length;
+    }
+
+    /**
+     * @return a clean interpreter, restored now if none is ready
+     */
+    Jatha acquire() throws IOException {
+        Jatha lisp = spares.poll();
+        return (lisp != null ? lisp : restore());
+    }
+
+    /**
+     * Gives back an interpreter, which must not be used again.
+     */
+    void release(Jatha lisp) {
+        try {
+            refiller.execute(this::refill);
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    private Jatha restore() throws IOException {
+        return Jatha.loadImage(new ByteArrayInputStream(image));
+    }
+
+    private void refill() {
+        try {
+            while (spares.remainingCapacity() > 0 && !refiller.isShutdown())
+                spares.offer(restore());
+        } catch (IOException e) {
+            // the image was written by this pool, so can always be read
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        refiller.shutdownNow();
+        spares.clear();
+    }
+
+}
@@ -0,0 +1,111 @@
+package net.bobacus.soundgen;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import net.bobacus.soundgen.sampler.SamplerParams;
+
+/**
+ * Plays PCM data through the default audio line, in real time.
+ * <p>
+ * On each write, the output measures how much audio is already queued in the line ahead of the new data, which
+ * is how long the new data will wait before it is heard, and counts an underrun if the line had run dry.
+ */
+class LineOutput implements AudioOutput {
+
+    /**
+     * @param params the sampler parameters
+     * @throws SoundGenException if a LineUnavailableException was thrown when getting or opening the audio line.
+     */
+    LineOutput(SamplerParams params) {
+        this(params, 0);
+    }
+
+    /**
+     * @param params       the sampler parameters
+     * @param bufferFrames the size of the line's buffer in frames, or 0 for the line's default
+     * @throws SoundGenException if a LineUnavailableException was thrown when getting or opening the audio line.
+     */
+    LineOutput(SamplerParams params, int bufferFrames) {
+        // the same format as PcmEncoder writes
+        AudioFormat.Encoding encoding = (params.isFloatEncoding() ? AudioFormat.Encoding.PCM_FLOAT
+                : params.getBits() == 8 ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED);
+        AudioFormat format = new AudioFormat(encoding, params.getSampleRate(), params.getBits(),
+                params.getChannels(), params.getFrameSize(), params.getSampleRate(), false);
+        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+        try {
+            line = (SourceDataLine) AudioSystem.getLine(info);
+            if (bufferFrames > 0)
+                line.open(format, bufferFrames * params.getFrameSize());
+            else
+                line.open(format);
+        } catch (LineUnavailableException e) {
+            throw new SoundGenException(e);
+        }
+        line.start();
+        frameSize = params.getFrameSize();
+        nanosPerFrame = 1e9 / params.getSampleRate();
+    }
+
+    private final SourceDataLine line;
+    private final int frameSize;
+    private final double nanosPerFrame;
+
+    private long framesWritten = 0;
+    private long writes = 0;
+    private long underruns = 0;
+    private double totalQueuedNanos = 0;
+    private long maxQueuedNanos = 0;
+
+    public void write(byte[] data, int offset, int length) {
+        if (writes > 0) {
+            long queued = Math.max(0, framesWritten - line.getLongFramePosition());
+            if (queued == 0 || line.available() >= line.getBufferSize())
+                underruns++;
+            long nanos = (long) (queued * nanosPerFrame);
+            totalQueuedNanos += nanos;
+            maxQueuedNanos = Math.max(maxQueuedNanos, nanos);
+        }
+        writes++;
+        framesWritten += length / frameSize;
+        line.write(data, offset, length);
+    }
+
+    /**
+     * @return the size of the line's buffer, in frames
+     */
+    int getBufferFrames() {
+        return line.getBufferSize() / frameSize;
+    }
+
+    /**
+     * @return the number of writes which found that the line had played everything written before
+     */
+    long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * @return the mean time that the audio already queued in the line took to play, when data was written
+     */
+    long getMeanQueuedNanos() {
+        return (writes > 1 ? (long) (totalQueuedNanos / (writes - 1)) : 0);
+    }
+
+    /**
+     * @return the longest time that the audio already queued in the line took to play, when data was written
+     */
+    long getMaxQueuedNanos() {
+        return maxQueuedNanos;
+    }
+
+    public void close() {
+        line.drain();
+        line.stop();
+        line.close();
+    }
+
+}
@@ -1,68 +1,404 @@
 package net.bobacus.soundgen;
 
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.SourceDataLine;
-
-import net.bobacus.soundgen.sampler.Sample;
-import net.bobacus.soundgen.sampler.SampleChunk;
+import net.bobacus.soundgen.effect.EffectChain;
+import net.bobacus.soundgen.metrics.RenderMetrics;
+import net.bobacus.soundgen.sampler.PcmEncoder;
 import net.bobacus.soundgen.sampler.Sampler;
 import net.bobacus.soundgen.sampler.SamplerParams;
 
 class MultiChannelPlayer {
 
+    MultiChannelPlayer() {
+        this(1);
+    }
+
+    /**
+     * @param threads the number of threads to render channels with; 1 renders them in turn on the calling thread
+     */
+    MultiChannelPlayer(int threads) {
+        this(threads, RenderMetrics.NONE);
+    }
+
     /**
+     * @param threads the number of threads to render channels with; 1 renders them in turn on the calling thread
+     * @param metrics receives channel and mix timings
+     */
+    MultiChannelPlayer(int threads, RenderMetrics metrics) {
+        this(threads, metrics, false);
+    }
+
+    /**
+     * @param threads the number of threads to render channels with; 1 renders them in turn on the calling thread
+     * @param metrics receives channel and mix timings
+     * @param dither  true to dither integer output samples
+     */
+    MultiChannelPlayer(int threads, RenderMetrics metrics, boolean dither) {
+        this(threads, metrics, dither, 0);
+    }
+
+    /**
+     * @param threads   the number of threads to render channels with; 1 renders them in turn on the calling thread
+     * @param metrics   receives channel and mix timings
+     * @param dither    true to dither integer output samples
+     * @param blockSize the number of samples to render at a time, or 0 for half a second
+     */
+    MultiChannelPlayer(int threads, RenderMetrics metrics, boolean dither, int blockSize) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1");
+        if (blockSize < 0)
+            throw new IllegalArgumentException("blockSize must not be negative");
+        this.threads = threads;
+        this.metrics = metrics;
+        this.timing = metrics.isEnabled();
+        this.dither = dither;
+        this.blockSize = blockSize;
+    }
+
+    private final int threads;
+    private final RenderMetrics metrics;
+    private final boolean timing;
+    private final boolean dither;
+    private final int blockSize;
+
+    // the deadline watchdog's counts for the last play
+    private long blocks = 0;
+    private long deadlineMisses = 0;
+    private long maxBlockNanos = 0;
+    private long totalBlockNanos = 0;
+
+    // channels waiting to replace the ones being played, at the next block
+    private final AtomicReference<Channels> pending = new AtomicReference<>();
+
+    /**
+     * @return the number of blocks rendered by the last play
+     */
+    long getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @return the number of blocks that took longer to render and mix than they take to play, in the last play
+     */
+    long getDeadlineMisses() {
+        return deadlineMisses;
+    }
+
+    /**
+     * @return the mean time taken to render and mix a block, in the last play
+     */
+    long getMeanBlockNanos() {
+        return (blocks > 0 ? totalBlockNanos / blocks : 0);
+    }
+
+    /**
+     * @return the longest time taken to render and mix a block, in the last play
+     */
+    long getMaxBlockNanos() {
+        return maxBlockNanos;
+    }
+
+    /**
+     * Each chunk is rendered one channel per task, and then the channels are mixed in a fixed order, so the output
+     * does not depend on the number of threads. Each channel is rendered once, and is then added into each of the
+     * output channels (as many as params gives) according to its pan and gain, so stereo output costs little more
+     * than mono.
+     * <p>
+     * Everything the loop needs is allocated before it starts, so that small blocks can be rendered in real time.
+     * Each block is timed against its own duration, and counted as a deadline miss if it took longer to render and
+     * mix than it will take to play.
+     *
      * @param samplers the samplers to use (one per channel)
-     * @param duration the total duration of audio to play, as the number of samples to be output
+     * @param duration the total duration of audio to play, as the number of samples to be output, or -1 to play
+     *                 until the end of the first sampler, for channels whose length isn't known in advance
      * @param params   the sampler parameters
-     * @throws SoundGenException if a LineUnavailableException was thrown when getting or opening the audio line.
+     * @param output   where to send the audio; this is closed when all the audio has been written, or aborted if
+     *                 the play fails part way through
+     */
+    void play(List<? extends Sampler> samplers, int duration, SamplerParams params, AudioOutput output) {
+        play(samplers, null, duration, params, output);
+    }
+
+    /**
+     * As {@link #play(List, int, SamplerParams, AudioOutput)}, with effects on the mix.
+     *
+     * @param master   the effects to run each output channel's mix through, one chain per output channel, or null;
+     *                 when playing until the end of the first sampler, the play goes on until their tails die away
      */
-    void play(List<? extends Sampler> samplers, int duration, SamplerParams params) {
-        AudioFormat format = new AudioFormat(
-                params.getSampleRate(), params.getBits(), params.getChannels(), true, false);
-        SourceDataLine line;
-        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+    void play(List<? extends Sampler> samplers, EffectChain[] master, int duration, SamplerParams params,
+              AudioOutput output) {
+        ForkJoinPool pool = (threads > 1 ? new ForkJoinPool(threads) : null);
         try {
-            line = (SourceDataLine) AudioSystem.getLine(info);
-            line.open(format);
-        } catch (LineUnavailableException e) {
-            throw new SoundGenException(e);
+            play(samplers, master, duration, params, output, pool);
+            output.close();
+        } catch (RuntimeException | Error e) {
+            try {
+                output.abort();
+            } catch (RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            if (pool != null)
+                pool.shutdown();
         }
-        line.start();
-        int channelCount = samplers.size();
-        int chunkSize = params.getSampleRate() / 2;
-        for (int p = 0; p < duration; ) {
-            int q = (duration - p >= chunkSize ? chunkSize : duration - p);
-            double[] samples = new double[q];
-            for (Sampler s : samplers) {
-                Iterator<SampleChunk> ssIterator = s.getSamples(q, p);
-                int i = 0;
-                for (; ssIterator.hasNext() && i < q; ) {
-                    SampleChunk c = ssIterator.next();
-                    double[] ss = c.getSamples();
-                    for (int j = 0; i < q && j < ss.length; i++, j++) {
-                        samples[i] += ss[j];
-                    }
+    }
+
+    private void play(List<? extends Sampler> samplers, EffectChain[] master, int duration, SamplerParams params,
+                      AudioOutput output, ForkJoinPool pool) {
+        int chunkSize = (blockSize > 0 ? blockSize : params.getSampleRate() / 2);
+        // one of these is used, depending on the precision
+        boolean single = params.isSinglePrecision();
+        int outputs = params.getChannels();
+        double[][] samples = (single ? null : new double[outputs][chunkSize]);
+        float[][] floatSamples = (single ? new float[outputs][chunkSize] : null);
+        PcmEncoder encoder = new PcmEncoder(params, dither);
+        byte[] data = new byte[chunkSize * encoder.getFrameSize()];
+        Channels channels = new Channels(samplers, master, chunkSize, params);
+        pending.set(null);
+        blocks = 0;
+        deadlineMisses = 0;
+        maxBlockNanos = 0;
+        totalBlockNanos = 0;
+        double nanosPerSample = 1e9 / params.getSampleRate();
+        for (int p = 0; (duration < 0 ? channels.samplers.size() > 0 : p < duration); ) {
+            // the replacement was set up by the thread that asked for it, so only the swap happens here
+            Channels replacement = pending.getAndSet(null);
+            if (replacement != null)
+                channels = replacement;
+            long blockStart = System.nanoTime();
+            int q = (duration < 0 || duration - p >= chunkSize ? chunkSize : duration - p);
+            int start = p;
+            for (ChannelTask t : channels.tasks) {
+                t.q = q;
+                t.start = start;
+                if (pool == null) {
+                    t.compute();
+                } else {
+                    t.reinitialize();
+                    pool.execute(t);
+                }
+            }
+            if (pool != null) {
+                for (ChannelTask t : channels.tasks)
+                    t.join();
+            }
+            if (duration < 0 && pending.get() == null) {
+                // the first sampler knows its length once it has been rendered up to its end
+                int length = channels.samplers.get(0).getLength();
+                if (length >= 0)
+                    length += channels.masterTailLength;
+                if (length >= 0 && length <= start + q) {
+                    q = Math.max(0, length - start);
+                    duration = start + q;
                 }
             }
+
+            long mixStart = (timing ? System.nanoTime() : 0);
+            if (single)
+                mix(channels.floatSamples, channels.weights, channels.master, floatSamples, q, encoder, data);
+            else
+                mix(channels.samples, channels.weights, channels.master, samples, q, encoder, data);
             p += q;
-            int dataSize = q * 2;
-            byte[] data = new byte[dataSize];
-            for (int i = 0; i < q; i++) {
-                double sample = samples[i] / channelCount;
-                data[i * 2] = Sample.getLittleByte(sample);
-                data[i * 2 + 1] = Sample.getBigByte(sample);
+            int dataSize = q * encoder.getFrameSize();
+            long end = System.nanoTime();
+            if (timing)
+                metrics.mixed(q, end - mixStart);
+            blocks++;
+            maxBlockNanos = Math.max(maxBlockNanos, end - blockStart);
+            totalBlockNanos += end - blockStart;
+            if (end - blockStart > q * nanosPerSample)
+                deadlineMisses++;
+            output.write(data, 0, dataSize);
+        }
+    }
+
+    /**
+     * Replaces the channels being played, from the start of the next block, without stopping the output. The new
+     * samplers carry on from the position the player has reached, rather than starting again, so a changed tune
+     * comes in at the same point in time. May be called from any thread while {@link #play} is running; a
+     * replacement which arrives after the end of the play is discarded.
+     *
+     * @param samplers the samplers to use from the next block (one per channel)
+     * @param params   the sampler parameters, which must be the same as the ones being played
+     */
+    void replace(List<? extends Sampler> samplers, SamplerParams params) {
+        replace(samplers, null, params);
+    }
+
+    /**
+     * As {@link #replace(List, SamplerParams)}, with new effects on the mix.
+     *
+     * @param samplers the samplers to use from the next block (one per channel)
+     * @param master   the effects on the mix from the next block, one chain per output channel, or null
+     * @param params   the sampler parameters, which must be the same as the ones being played
+     */
+    void replace(List<? extends Sampler> samplers, EffectChain[] master, SamplerParams params) {
+        int chunkSize = (blockSize > 0 ? blockSize : params.getSampleRate() / 2);
+        pending.set(new Channels(samplers, master, chunkSize, params));
+    }
+
+    /**
+     * Gives the factors that a channel is multiplied by in each output channel. The output channels are spread evenly
+     * from left to right, and a channel is panned between the two nearest its position with constant power.
+     *
+     * @param pan     the channel's position, from -1 (left) to 1 (right)
+     * @param gain    the channel's gain
+     * @param outputs the number of output channels
+     */
+    static double[] getWeights(double pan, double gain, int outputs) {
+        double[] weights = new double[outputs];
+        if (outputs == 1) {
+            weights[0] = gain;
+            return weights;
+        }
+        double x = (Math.max(-1, Math.min(1, pan)) + 1) / 2 * (outputs - 1);
+        int k = Math.min((int) x, outputs - 2);
+        double angle = (x - k) * Math.PI / 2;
+        weights[k] = gain * Math.cos(angle);
+        weights[k + 1] = gain * Math.sin(angle);
+        return weights;
+    }
+
+    // sums q samples of the channels into each output channel by their weights, and encodes the average, after
+    // running it through the master effects if there are any
+    private static void mix(double[][] channelSamples, double[][] weights, EffectChain[] master, double[][] samples,
+                            int q, PcmEncoder encoder, byte[] data) {
+        for (double[] out : samples) {
+            Arrays.fill(out, 0, q, 0);
+        }
+        for (int c = 0; c < channelSamples.length; c++) {
+            double[] b = channelSamples[c];
+            for (int k = 0; k < samples.length; k++) {
+                double w = weights[c][k];
+                if (w == 0)
+                    continue;
+                double[] out = samples[k];
+                for (int i = 0; i < q; i++) {
+                    out[i] += w * b[i];
+                }
+            }
+        }
+        // a score with no channels is silence
+        double gain = (channelSamples.length > 0 ? 1.0 / channelSamples.length : 1);
+        if (master != null) {
+            // the effects are given the average, so that the levels they see don't depend on the number of channels
+            for (int k = 0; k < samples.length; k++) {
+                double[] out = samples[k];
+                for (int i = 0; i < q; i++) {
+                    out[i] *= gain;
+                }
+                master[k].process(out, 0, q);
             }
-            line.write(data, 0, dataSize);
+            gain = 1;
+        }
+        encoder.encode(samples, 0, q, gain, data, 0);
+    }
+
+    private static void mix(float[][] channelSamples, double[][] weights, EffectChain[] master, float[][] samples,
+                            int q, PcmEncoder encoder, byte[] data) {
+        for (float[] out : samples) {
+            Arrays.fill(out, 0, q, 0);
+        }
+        for (int c = 0; c < channelSamples.length; c++) {
+            float[] b = channelSamples[c];
+            for (int k = 0; k < samples.length; k++) {
+                float w = (float) weights[c][k];
+                if (w == 0)
+                    continue;
+                float[] out = samples[k];
+                for (int i = 0; i < q; i++) {
+                    out[i] += w * b[i];
+                }
+            }
+        }
+        // a score with no channels is silence
+        double gain = (channelSamples.length > 0 ? 1.0 / channelSamples.length : 1);
+        if (master != null) {
+            float g = (float) gain;
+            for (int k = 0; k < samples.length; k++) {
+                float[] out = samples[k];
+                for (int i = 0; i < q; i++) {
+                    out[i] *= g;
+                }
+                master[k].process(out, 0, q);
+            }
+            gain = 1;
+        }
+        encoder.encode(samples, 0, q, gain, data, 0);
+    }
+
+    /**
+     * The channels being played, with the buffers they are rendered into, their weights in each output channel, and
+     * the effects on the mix.
+     */
+    private final class Channels {
+
+        Channels(List<? extends Sampler> samplers, EffectChain[] master, int chunkSize, SamplerParams params) {
+            int channelCount = samplers.size();
+            boolean single = params.isSinglePrecision();
+            this.samplers = samplers;
+            this.master = master;
+            masterTailLength = (master != null ? master[0].getTailLength() : 0);
+            samples = (single ? null : new double[channelCount][chunkSize]);
+            floatSamples = (single ? new float[channelCount][chunkSize] : null);
+            weights = new double[channelCount][];
+            tasks = new ChannelTask[channelCount];
+            for (int c = 0; c < channelCount; c++) {
+                Sampler s = samplers.get(c);
+                weights[c] = getWeights(s.getPan(), s.getGain(), params.getChannels());
+                tasks[c] = new ChannelTask(s, (single ? floatSamples[c] : samples[c]), c);
+            }
+        }
+
+        final List<? extends Sampler> samplers;
+        final EffectChain[] master;
+        final int masterTailLength;
+        // one of these is used, depending on the precision
+        final double[][] samples;
+        final float[][] floatSamples;
+        final double[][] weights;
+        final ChannelTask[] tasks;
+    }
+
+    /**
+     * Renders a block of one channel. The same task is reused for every block, so that nothing is allocated per
+     * block.
+     */
+    private final class ChannelTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // b is a double[] or float[], according to the precision
+        ChannelTask(Sampler s, Object b, int channel) {
+            this.s = s;
+            this.b = b;
+            this.channel = channel;
+        }
+
+        private final Sampler s;
+        private final Object b;
+        private final int channel;
+
+        // the block to render
+        int q;
+        int start;
+
+        @Override
+        protected void compute() {
+            long t = (timing ? System.nanoTime() : 0);
+            if (b instanceof float[])
+                s.getSamples((float[]) b, 0, q, start);
+            else
+                s.getSamples((double[]) b, 0, q, start);
+            if (timing)
+                metrics.channelRendered(channel, q, System.nanoTime() - t);
         }
-        line.drain();
-        line.stop();
-        line.close();
     }
 
 }
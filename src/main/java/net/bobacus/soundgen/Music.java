@@ -2,10 +2,11 @@ package net.bobacus.soundgen;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
 
 import org.jatha.Jatha;
 import org.jatha.dynatype.LispNumber;
@@ -16,85 +17,439 @@ import net.bobacus.fn.Function;
 import net.bobacus.fn.FunctionIterator;
 import net.bobacus.fn.Predicate;
 import net.bobacus.soundgen.channel.Channel;
+import net.bobacus.soundgen.channel.EventChannel;
+import net.bobacus.soundgen.channel.NoteEvent;
+import net.bobacus.soundgen.effect.EffectChain;
+import net.bobacus.soundgen.effect.EffectSpec;
+import net.bobacus.soundgen.metrics.RenderMetrics;
 import net.bobacus.soundgen.sampler.ChannelSampler;
+import net.bobacus.soundgen.sampler.EffectSampler;
+import net.bobacus.soundgen.sampler.NoteCache;
+import net.bobacus.soundgen.sampler.Sampler;
 import net.bobacus.soundgen.sampler.SamplerParams;
+import net.bobacus.soundgen.sampler.VoiceSampler;
 import net.bobacus.soundgen.synth.Instruments;
 import net.bobacus.soundgen.synth.Sound;
+import net.bobacus.soundgen.synth.Synth;
+import net.bobacus.soundgen.synth.SynthCompiler;
 
-public class Music {
+/**
+ * The channels of a tune, read from a music file.
+ * <p>
+ * The file is a sequence of Lisp expressions, each ended by a line containing just a full stop, and the value of
+ * the last one gives the channels. Each channel is either a list of notes, or the name of a generator function
+ * which is called with 0, 1, 2... to give successive notes, until it returns nil. A note is a list of the
+ * instrument number, the frequency and the duration in seconds. The notes of such a channel are played one after
+ * another.
+ * <p>
+ * A channel can instead be a list starting with the symbol {@code events}, followed by the notes or the name of
+ * a generator. Each note then starts with its start time in seconds, and the notes (which must be in order of
+ * their start times) may overlap, up to the number of voices given to {@link #getSamplers}, so that a chord can
+ * be played in one channel.
+ * <p>
+ * Any channel can be wrapped as {@code (mix pan gain channel)} to place it in a stereo or multichannel output: the
+ * pan runs from -1 (left) through 0 (centre, the default) to 1 (right), and the gain (1 by default) multiplies the
+ * channel's samples in the mix.
+ * <p>
+ * Any channel can also be wrapped as {@code (effects effect... channel)}, to run its samples through the effects
+ * in turn, and the whole list of channels can be wrapped the same way to run the mix of each output channel through
+ * them. Each effect is a list of its name and arguments, e.g. {@code (reverb 0.8 0.5 0.3)}; see {@link EffectSpec}.
+ * The tune then goes on after the end of the first channel until the longest of the channels' effects, followed by
+ * the effects on the mix, have died away.
+ * <p>
+ * Each note is given its own voice of its instrument, seeded from a channel's sequence of seeds, so that noise
+ * instruments sound the same every time the tune is played with the same seed, however the channels are rendered.
+ * <p>
+ * The score can be streamed, so that playback can start before the whole tune has been built: the notes are
+ * then read (and generators called) on a background thread, a bounded window ahead of the channels' samplers.
+ */
+public class Music implements AutoCloseable {
+
+    /**
+     * The number of voices for each channel of note events, unless given otherwise
+     */
+    static final int VOICES = 8;
 
     public Music(File file) throws IOException {
-        channels = getMusic(file);
+        this(file, 0);
+    }
+
+    /**
+     * @param file   the music file
+     * @param window 0 to build the whole score now; otherwise, the score is streamed, with up to this many notes
+     *               built ahead of playback in each channel
+     */
+    public Music(File file, int window) throws IOException {
+        this(file, window, 0);
+    }
+
+    /**
+     * @param file   the music file
+     * @param window 0 to build the whole score now; otherwise, the score is streamed, with up to this many notes
+     *               built ahead of playback in each channel
+     * @param seed   the seed for the instruments' random number generators
+     */
+    public Music(File file, int window, long seed) throws IOException {
+        this(new TuneEvaluator(), file, window, seed);
     }
 
-    private List<Channel> channels;
+    private Music(TuneEvaluator evaluator, File file, int window, long seed) throws IOException {
+        this(evaluator.getInterpreter(), evaluator.evaluate(file), window, seed);
+    }
 
-    List<? extends ChannelSampler> getSamplers(SamplerParams params) {
-        ArrayList<ChannelSampler> samplers = new ArrayList<>();
-        for (Channel c : channels) {
-            samplers.add(new ChannelSampler(c, params));
+    /**
+     * @param lisp   the interpreter the tune was evaluated in, which calls any generators
+     * @param result the value of the music file's last expression
+     * @param window 0 to build the whole score now; otherwise, the score is streamed, with up to this many notes
+     *               built ahead of playback in each channel
+     * @param seed   the seed for the instruments' random number generators
+     */
+    Music(Jatha lisp, LispValue result, int window, long seed) {
+        LispValue eventsSymbol = lisp.EVAL.intern("EVENTS");
+        LispValue mixSymbol = lisp.EVAL.intern("MIX");
+        LispValue effectsSymbol = lisp.EVAL.intern("EFFECTS");
+        masterEffects = new ArrayList<>();
+        if (result.basic_consp() && result.first() == effectsSymbol)
+            result = unwrapEffects(result, masterEffects);
+        List<LispValue> values = getChannels(result);
+        double[] pans = new double[values.size()];
+        double[] gains = new double[values.size()];
+        effects = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            LispValue v = values.get(i);
+            gains[i] = 1;
+            List<EffectSpec> channelEffects = new ArrayList<>();
+            // the wrappers may be nested, in either order
+            while (v.basic_consp() && (v.first() == mixSymbol || v.first() == effectsSymbol)) {
+                if (v.first() == mixSymbol) {
+                    // (mix pan gain channel)
+                    pans[i] = ((LispNumber) v.second()).getDoubleValue();
+                    gains[i] = ((LispNumber) v.third()).getDoubleValue();
+                    v = v.fourth();
+                } else {
+                    v = unwrapEffects(v, channelEffects);
+                }
+            }
+            values.set(i, v);
+            effects.add(channelEffects);
+        }
+
+        SplittableRandom seeds = new SplittableRandom(seed);
+        List<Iterator<?>> sources = new ArrayList<>();
+        for (LispValue v : values) {
+            SplittableRandom channelSeeds = seeds.split();
+            sources.add(isEvents(v, eventsSymbol)
+                    ? getEventSource(lisp, v.rest(), channelSeeds) : getSoundSource(lisp, v, channelSeeds));
+        }
+        boolean eager = (window <= 0);
+        if (eager) {
+            streamer = null;
+        } else {
+            streamer = new ScoreStreamer<>(sources, window);
+            sources = new ArrayList<>(streamer.getStreams());
+        }
+        // each stream gives the same kind of item as its source
+        parts = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (isEvents(values.get(i), eventsSymbol)) {
+                EventChannel channel = new EventChannel(cast(sources.get(i)), eager);
+                channel.setPan(pans[i]);
+                channel.setGain(gains[i]);
+                parts.add(new EventPart(channel));
+            } else {
+                Channel channel = new Channel(cast(sources.get(i)), eager);
+                channel.setPan(pans[i]);
+                channel.setGain(gains[i]);
+                parts.add(new SoundPart(channel));
+            }
+        }
+        if (streamer != null)
+            streamer.start();
+    }
+
+    private final List<Part> parts;
+    private final ScoreStreamer<Object> streamer;
+    // the effects on each channel, and on the whole mix
+    private final List<List<EffectSpec>> effects;
+    private final List<EffectSpec> masterEffects;
+
+    List<? extends Sampler> getSamplers(SamplerParams params) {
+        return getSamplers(params, null);
+    }
+
+    /**
+     * @param params the sampler parameters
+     * @param cache  cache of rendered notes to share between the channels, or null for none
+     */
+    List<? extends Sampler> getSamplers(SamplerParams params, NoteCache cache) {
+        return getSamplers(params, cache, RenderMetrics.NONE);
+    }
+
+    /**
+     * @param params  the sampler parameters
+     * @param cache   cache of rendered notes to share between the channels, or null for none
+     * @param metrics receives note timings
+     */
+    List<? extends Sampler> getSamplers(SamplerParams params, NoteCache cache, RenderMetrics metrics) {
+        return getSamplers(params, cache, metrics, VOICES);
+    }
+
+    /**
+     * @param params  the sampler parameters
+     * @param cache   cache of rendered notes to share between the channels, or null for none
+     * @param metrics receives note timings
+     * @param voices  the number of voices for each channel of note events
+     */
+    List<? extends Sampler> getSamplers(SamplerParams params, NoteCache cache, RenderMetrics metrics, int voices) {
+        ArrayList<Sampler> samplers = new ArrayList<>();
+        for (int i = 0; i < parts.size(); i++) {
+            Sampler sampler = parts.get(i).getSampler(params, cache, metrics, voices);
+            List<EffectSpec> channelEffects = effects.get(i);
+            // the first channel gives the length of the tune, so it goes on until every channel's effects die away
+            int tailLength = (i == 0 ? getChannelTailLength(params) : 0);
+            if (!channelEffects.isEmpty() || tailLength > 0) {
+                EffectChain chain = EffectSpec.createChain(channelEffects, params.getSampleRate(),
+                        getEffectBlockSize(params));
+                sampler = new EffectSampler(sampler, chain, Math.max(tailLength, chain.getTailLength()));
+            }
+            samplers.add(sampler);
         }
         return samplers;
     }
 
+    // the longest tail of the effects on any channel, in samples
+    private int getChannelTailLength(SamplerParams params) {
+        int length = 0;
+        for (List<EffectSpec> channelEffects : effects) {
+            length = Math.max(length, EffectSpec.getTailLength(channelEffects, params.getSampleRate()));
+        }
+        return length;
+    }
+
+    /**
+     * @param params the sampler parameters
+     * @return the effects on the whole mix, one chain for each output channel, or null if there are none
+     */
+    EffectChain[] getMasterEffects(SamplerParams params) {
+        if (masterEffects.isEmpty())
+            return null;
+        EffectChain[] chains = new EffectChain[params.getChannels()];
+        for (int k = 0; k < chains.length; k++) {
+            chains[k] = EffectSpec.createChain(masterEffects, params.getSampleRate(), getEffectBlockSize(params));
+        }
+        return chains;
+    }
+
+    // the player's block size, unless it is told otherwise
+    private static int getEffectBlockSize(SamplerParams params) {
+        return params.getSampleRate() / 2;
+    }
+
+    /**
+     * @return true if the score is being streamed
+     */
+    boolean isStreaming() {
+        return streamer != null;
+    }
+
+    /**
+     * @param params the sampler parameters
+     * @return the number of samples in the tune: the duration of the first channel, and then the tails of the effects
+     * on the channels and on the mix; or -1 if the score is being streamed
+     */
+    int getLength(SamplerParams params) {
+        if (streamer != null)
+            return -1;
+        int sampleRate = params.getSampleRate();
+        return (int) (getDuration() * sampleRate) + getChannelTailLength(params)
+                + EffectSpec.getTailLength(masterEffects, sampleRate);
+    }
+
+    /**
+     * @return the duration of the first channel in seconds, without the tails of any effects, or -1 if the score is
+     * being streamed
+     */
     double getDuration() {
-        if (channels.size() < 1)
+        if (streamer != null)
+            return -1;
+        if (parts.size() < 1)
             return 0;
-        double d = 0.0;
-        for (Sound s : channels.get(0).getSounds()) {
-            d += s.getDuration();
+        return parts.get(0).getDuration();
+    }
+
+    /**
+     * Stops building a streamed score.
+     */
+    @Override
+    public void close() {
+        if (streamer != null)
+            streamer.stop();
+    }
+
+    private static List<LispValue> getChannels(LispValue result) {
+        Predicate<LispValue> testChannel = v -> v.basic_listp() || v.basic_symbolp();
+        Iterator<LispValue> iv = new FilterIterator<>(result.iterator(), testChannel);
+        ArrayList<LispValue> channels = new ArrayList<>();
+        while (iv.hasNext())
+            channels.add(iv.next());
+        return channels;
+    }
+
+    // adds the effects of (effects (name arg...)... wrapped) before those in the list, and returns what they wrap
+    private static LispValue unwrapEffects(LispValue v, List<EffectSpec> effects) {
+        List<EffectSpec> specs = new ArrayList<>();
+        LispValue rest = v.rest();
+        if (rest.basic_null())
+            throw new SoundGenException("Nothing for the effects to apply to: " + v);
+        for (; !rest.rest().basic_null(); rest = rest.rest()) {
+            LispValue spec = rest.first();
+            if (!spec.basic_consp() || !spec.first().basic_symbolp())
+                throw new SoundGenException("Not an effect: " + spec + " in " + v);
+            double[] args = new double[spec.basic_length() - 1];
+            LispValue a = spec.rest();
+            for (int i = 0; i < args.length; i++, a = a.rest()) {
+                if (!(a.first() instanceof LispNumber))
+                    throw new SoundGenException("Not a number: " + a.first() + " in effect " + spec);
+                args[i] = ((LispNumber) a.first()).getDoubleValue();
+            }
+            try {
+                specs.add(new EffectSpec(spec.first().toStringSimple(), args));
+            } catch (IllegalArgumentException e) {
+                throw new SoundGenException(e.getMessage() + ": " + spec);
+            }
         }
-        return d;
+        effects.addAll(0, specs);
+        return rest.first();
     }
 
-    private static List<Channel> getMusic(File file) throws IOException {
-        LispValue result = evalMusicFile(file);
+    private static boolean isEvents(LispValue channel, LispValue eventsSymbol) {
+        return channel.basic_consp() && channel.first() == eventsSymbol;
+    }
 
-        ArrayList<Channel> channels = new ArrayList<>();
+    // the notes in a list, or from a generator
+    private static Iterator<LispValue> getNotes(Jatha lisp, LispValue v) {
+        if (v.basic_consp() && v.first().basic_symbolp() && !v.first().basic_null() && v.rest().basic_null())
+            // (events generator)
+            v = v.first();
+        if (v.basic_listp())
+            return new FilterIterator<>(v.iterator(), n -> !n.basic_null());
+        return new GeneratorIterator(lisp, v);
+    }
 
-        final Predicate<LispValue> testNotNull = v -> !v.basic_null();
-        Predicate<LispValue> testListP = LispValue::basic_listp;
+    private static Sound getSound(LispValue instrument, LispValue frequency, LispValue length, long seed) {
+        int instr = (int) ((LispNumber) instrument).getLongValue();
+        double pitch = ((LispNumber) frequency).getDoubleValue();
+        double duration = ((LispNumber) length).getDoubleValue();
+        Synth synth = SynthCompiler.compile(Instruments.mInstruments[instr].getPitch(pitch).newVoice(seed));
+        return new Sound(synth, duration, instr, pitch);
+    }
 
-        final Function<LispValue, Sound> soundFromLisp = v -> {
-            int instr = (int) ((LispNumber) v.first()).getLongValue();
-            double pitch = ((LispNumber) v.second()).getDoubleValue();
-            double duration = ((LispNumber) v.third()).getDoubleValue();
-            return new Sound(Instruments.mInstruments[instr].getPitch(pitch), duration);
-        };
+    private static Iterator<Sound> getSoundSource(Jatha lisp, LispValue v, SplittableRandom seeds) {
+        Function<LispValue, Sound> soundFromLisp = n -> getSound(n.first(), n.second(), n.third(), seeds.nextLong());
+        return FunctionIterator.create(getNotes(lisp, v), soundFromLisp);
+    }
 
-        Function<LispValue, Channel> channelFromLisp = v -> {
-            Iterator<LispValue> iv = new FilterIterator<>(v.iterator(), testNotNull);
-            Iterator<Sound> is = FunctionIterator.create(iv, soundFromLisp);
-            return new Channel(is);
-        };
+    private static Iterator<NoteEvent> getEventSource(Jatha lisp, LispValue v, SplittableRandom seeds) {
+        Function<LispValue, NoteEvent> eventFromLisp = n -> new NoteEvent(((LispNumber) n.first()).getDoubleValue(),
+                getSound(n.second(), n.third(), n.fourth(), seeds.nextLong()));
+        return FunctionIterator.create(getNotes(lisp, v), eventFromLisp);
+    }
 
-        Iterator<LispValue> iv = new FilterIterator<>(result.iterator(), testListP);
-        Iterator<Channel> ic = FunctionIterator.create(iv, channelFromLisp);
+    @SuppressWarnings("unchecked")
+    private static <T> Iterator<T> cast(Iterator<?> i) {
+        return (Iterator<T>) i;
+    }
 
-        while (ic.hasNext())
-            channels.add(ic.next());
+    /**
+     * A channel of the tune.
+     */
+    private interface Part {
+        Sampler getSampler(SamplerParams params, NoteCache cache, RenderMetrics metrics, int voices);
 
-        return channels;
+        double getDuration();
     }
 
-    private static LispValue evalMusicFile(File file) throws IOException {
-        Jatha myLisp = new Jatha(false, false);
-        myLisp.init();
-        myLisp.start();
-        LispValue result = null;
-        StringBuilder sExpression = new StringBuilder();
-        for (String l : Files.readAllLines(file.toPath())) {
-            if (l.equals(".")) {
-                result = myLisp.eval(sExpression.toString());
-                sExpression = new StringBuilder();
-            } else {
-                sExpression.append(l);
+    private static class SoundPart implements Part {
+
+        SoundPart(Channel channel) {
+            this.channel = channel;
+        }
+
+        private final Channel channel;
+
+        public Sampler getSampler(SamplerParams params, NoteCache cache, RenderMetrics metrics, int voices) {
+            return new ChannelSampler(channel, params, cache, metrics);
+        }
+
+        public double getDuration() {
+            double d = 0.0;
+            for (Sound s : channel.getSounds()) {
+                d += s.getDuration();
             }
+            return d;
         }
-        if (result == null) {
-            throw new SoundGenException("No Lisp evaluation happened");
+    }
+
+    private static class EventPart implements Part {
+
+        EventPart(EventChannel channel) {
+            this.channel = channel;
+        }
+
+        private final EventChannel channel;
+
+        public Sampler getSampler(SamplerParams params, NoteCache cache, RenderMetrics metrics, int voices) {
+            return new VoiceSampler(channel, params, voices, cache, metrics);
+        }
+
+        public double getDuration() {
+            double d = 0.0;
+            for (NoteEvent e : channel.getEvents()) {
+                d = Math.max(d, e.getStart() + e.getSound().getDuration());
+            }
+            return d;
+        }
+    }
+
+    /**
+     * Calls a generator function with 0, 1, 2... for successive notes, until it returns nil.
+     */
+    private static class GeneratorIterator implements Iterator<LispValue> {
+
+        GeneratorIterator(Jatha lisp, LispValue function) {
+            this.lisp = lisp;
+            this.function = function;
+        }
+
+        private final Jatha lisp;
+        private final LispValue function;
+        private int index = 0;
+        private LispValue next = null;
+        private boolean finished = false;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !finished) {
+                LispValue v = lisp.eval(lisp.makeList(function, lisp.makeInteger(index)));
+                if (v.basic_null())
+                    finished = true;
+                else if (v.basic_listp())
+                    next = v;
+                else
+                    throw new SoundGenException("Generator " + function + " gave " + v + " for note " + index);
+                index++;
+            }
+            return next != null;
+        }
+
+        @Override
+        public LispValue next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            LispValue v = next;
+            next = null;
+            return v;
         }
-        return result;
     }
 
 }
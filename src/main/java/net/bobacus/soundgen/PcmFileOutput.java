@@ -0,0 +1,101 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes raw PCM data to a file, as fast as it is supplied: just the samples, in the format given by the
+ * SamplerParams the player was given, with no header.
+ */
+class PcmFileOutput implements AudioOutput {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @param file the file to create or overwrite
+     * @throws SoundGenException if the file could not be opened
+     */
+    PcmFileOutput(File file) {
+        this.file = file;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new SoundGenException(e);
+        }
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private final File file;
+    final FileChannel channel;
+    final ByteBuffer buffer;
+    long dataSize = 0;
+
+    public void write(byte[] data, int offset, int length) {
+        if (dataSize + length > getMaxDataSize())
+            throw new SoundGenException("Too much audio for the file: it can hold at most " + getMaxDataSize()
+                    + " bytes");
+        dataSize += length;
+        while (length > 0) {
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(data, offset, n);
+            offset += n;
+            length -= n;
+            if (!buffer.hasRemaining())
+                flush();
+        }
+    }
+
+    public void close() {
+        try {
+            flush();
+            finish();
+            channel.close();
+        } catch (IOException e) {
+            throw new SoundGenException(e);
+        }
+    }
+
+    /**
+     * Closes the file and deletes it, for when the audio could not all be written, so that no incomplete file is
+     * left looking like a finished one.
+     */
+    @Override
+    public void abort() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // deleted anyway
+        }
+        file.delete();
+    }
+
+    /**
+     * @return the largest number of bytes of audio the file can hold
+     */
+    long getMaxDataSize() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Called on close, after all the data has been written, to complete the file.
+     */
+    void finish() throws IOException {
+    }
+
+    void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            throw new SoundGenException(e);
+        }
+        buffer.clear();
+    }
+
+}
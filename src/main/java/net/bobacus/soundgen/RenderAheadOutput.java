@@ -0,0 +1,185 @@
+package net.bobacus.soundgen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples rendering from a slow or real-time output (e.g. the audio line), by copying the data into a
+ * preallocated ring of blocks which a separate writer thread drains into the target output.
+ * <p>
+ * The ring is lock-free, with one producer (the thread calling write) and one consumer (the writer thread).
+ * The writer starts as soon as a couple of blocks are ready, so the ring adds little to the time before the first
+ * audio is heard, and up to depth blocks are then rendered ahead of the output. After that, each time the writer
+ * finds the ring empty counts as an underrun. The producer finding the ring full is not a fault: it is how
+ * rendering is held back to the speed of the output, whenever it is faster.
+ */
+class RenderAheadOutput implements AudioOutput {
+
+    private static final long WAIT_NANOS = 100_000;
+    // the number of blocks the writer waits for before it starts, unless the ring is smaller
+    private static final int START_BLOCKS = 2;
+
+    /**
+     * @param target    the output to write to, from the writer thread
+     * @param blockSize the size of each block, in bytes
+     * @param depth     the number of blocks in the ring
+     */
+    RenderAheadOutput(AudioOutput target, int blockSize, int depth) {
+        if (blockSize < 1 || depth < 1)
+            throw new IllegalArgumentException("blockSize and depth must be at least 1");
+        this.target = target;
+        this.blockSize = blockSize;
+        this.depth = depth;
+        blocks = new byte[depth][blockSize];
+        lengths = new int[depth];
+        writer = new Thread(this::drain, "SoundGen render-ahead writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private final AudioOutput target;
+    private final int blockSize;
+    private final int depth;
+
+    private final byte[][] blocks;
+    private final int[] lengths;
+
+    // index of the next block to be drained, only advanced by the writer thread
+    private final AtomicLong head = new AtomicLong();
+    // index of the next block to be filled, only advanced by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    private final Thread writer;
+    private volatile Thread producer;
+    private volatile boolean finished = false;
+    private volatile boolean aborted = false;
+    private volatile RuntimeException failure;
+
+    private volatile long underruns = 0;
+    private volatile long fullWaits = 0;
+
+    // the block being filled by the producer, if any
+    private byte[] current;
+    private int currentLength;
+
+    /**
+     * @return the number of times the writer found no rendered data waiting, after it had started
+     */
+    long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * @return the number of times rendering waited for the writer to make room in the ring, which it does whenever it
+     * is faster than the output
+     */
+    long getFullWaits() {
+        return fullWaits;
+    }
+
+    public void write(byte[] data, int offset, int length) {
+        while (length > 0) {
+            if (current == null)
+                acquire();
+            int n = Math.min(length, blockSize - currentLength);
+            System.arraycopy(data, offset, current, currentLength, n);
+            currentLength += n;
+            offset += n;
+            length -= n;
+            if (currentLength == blockSize)
+                publish();
+        }
+    }
+
+    public void close() {
+        if (current != null)
+            publish();
+        finished = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SoundGenException(e);
+        }
+        checkFailure();
+        target.close();
+    }
+
+    /**
+     * Stops the writer without waiting for the rest of the ring to be written, and aborts the target.
+     */
+    @Override
+    public void abort() {
+        aborted = true;
+        finished = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.abort();
+    }
+
+    private void acquire() {
+        producer = Thread.currentThread();
+        long t = tail.get();
+        if (t - head.get() == depth) {
+            fullWaits++;
+            do {
+                checkFailure();
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            } while (t - head.get() == depth);
+        }
+        checkFailure();
+        current = blocks[(int) (t % depth)];
+        currentLength = 0;
+    }
+
+    private void publish() {
+        long t = tail.get();
+        lengths[(int) (t % depth)] = currentLength;
+        current = null;
+        tail.set(t + 1);
+        LockSupport.unpark(writer);
+    }
+
+    private void checkFailure() {
+        if (failure != null)
+            throw new SoundGenException(failure);
+    }
+
+    private void drain() {
+        try {
+            // a little ahead before starting
+            int start = Math.min(START_BLOCKS, depth);
+            while (!finished && tail.get() - head.get() < start)
+                LockSupport.parkNanos(this, WAIT_NANOS);
+
+            for (long h = head.get(); ; ) {
+                // tail is set before finished, so if finished is seen here then the tail read after it is final
+                boolean done = finished;
+                if (aborted)
+                    break;
+                if (h == tail.get()) {
+                    if (done)
+                        break;
+                    underruns++;
+                    while (h == tail.get() && !finished)
+                        LockSupport.parkNanos(this, WAIT_NANOS);
+                    continue;
+                }
+                int i = (int) (h % depth);
+                target.write(blocks[i], 0, lengths[i]);
+                head.set(++h);
+                Thread p = producer;
+                if (p != null)
+                    LockSupport.unpark(p);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+}
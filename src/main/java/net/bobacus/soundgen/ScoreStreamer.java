@@ -0,0 +1,163 @@
+package net.bobacus.soundgen;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the items (sounds or note events) of several channels on a single background thread, keeping up to a window
+ * of them queued ahead of each channel's reader.
+ * <p>
+ * The sources all run on the score thread, so they may share state that isn't thread-safe (such as the Lisp
+ * interpreter that is building the tune). The score thread fills whichever queues have room, and waits when they
+ * are all full. Each of the streamed iterators may be read from a different thread, but each by only one at a time.
+ * If a source fails, reading from any of the streams that haven't finished throws a {@link SoundGenException}.
+ */
+class ScoreStreamer<T> {
+
+    /**
+     * @param sources the sources of each channel's items
+     * @param window  the greatest number of items to queue for each channel, at least 1
+     */
+    ScoreStreamer(List<? extends Iterator<? extends T>> sources, int window) {
+        if (window < 1)
+            throw new IllegalArgumentException("window must be at least 1");
+        this.sources = new ArrayList<>(sources);
+        queues = new ArrayList<>();
+        streams = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            ArrayBlockingQueue<Object> queue = new ArrayBlockingQueue<>(window);
+            queues.add(queue);
+            streams.add(new Stream(queue));
+        }
+        thread = new Thread(this::produce, "score");
+        thread.setDaemon(true);
+    }
+
+    private final List<Iterator<? extends T>> sources;
+    private final List<ArrayBlockingQueue<Object>> queues;
+    private final List<Iterator<T>> streams;
+    private final Thread thread;
+
+    // queued after a channel's last item
+    private static final Object END = new Object();
+
+    // signalled by the readers whenever they take from a queue
+    private final Object space = new Object();
+
+    private volatile boolean stopped = false;
+    private volatile RuntimeException failure = null;
+
+    /**
+     * @return the streamed items of each channel, in the same order as the sources
+     */
+    List<Iterator<T>> getStreams() {
+        return streams;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the score thread, if it hasn't already finished. The streams should not be read afterwards.
+     */
+    void stop() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    private void produce() {
+        boolean[] finished = new boolean[sources.size()];
+        int active = sources.size();
+        try {
+            while (active > 0 && !stopped) {
+                boolean progress = false;
+                for (int c = 0; c < finished.length; c++) {
+                    ArrayBlockingQueue<Object> queue = queues.get(c);
+                    if (finished[c] || queue.remainingCapacity() == 0)
+                        continue;
+                    Iterator<? extends T> source = sources.get(c);
+                    if (source.hasNext()) {
+                        queue.put(source.next());
+                    } else {
+                        queue.put(END);
+                        finished[c] = true;
+                        active--;
+                    }
+                    progress = true;
+                }
+                if (!progress)
+                    waitForSpace();
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    private void waitForSpace() throws InterruptedException {
+        synchronized (space) {
+            while (!stopped && !hasSpace())
+                space.wait();
+        }
+    }
+
+    private boolean hasSpace() {
+        for (ArrayBlockingQueue<Object> queue : queues) {
+            if (queue.remainingCapacity() > 0)
+                return true;
+        }
+        return false;
+    }
+
+    private class Stream implements Iterator<T> {
+
+        Stream(ArrayBlockingQueue<Object> queue) {
+            this.queue = queue;
+        }
+
+        private final ArrayBlockingQueue<Object> queue;
+        private Object next = null;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null)
+                next = take();
+            return next != END;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            T item = (T) next;
+            next = null;
+            return item;
+        }
+
+        private Object take() {
+            try {
+                while (true) {
+                    Object o = queue.poll(10, TimeUnit.MILLISECONDS);
+                    if (o != null) {
+                        synchronized (space) {
+                            space.notify();
+                        }
+                        return o;
+                    }
+                    if (failure != null)
+                        throw new SoundGenException("Failed to read the score", failure);
+                }
+            } catch (InterruptedException e) {
+                throw new SoundGenException(e);
+            }
+        }
+    }
+
+}
@@ -4,30 +4,194 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
+import net.bobacus.soundgen.effect.EffectChain;
+import net.bobacus.soundgen.metrics.RenderMetrics;
+import net.bobacus.soundgen.metrics.RenderStatistics;
+import net.bobacus.soundgen.sampler.NoteCache;
 import net.bobacus.soundgen.sampler.Sampler;
 import net.bobacus.soundgen.sampler.SamplerParams;
 
 public class SoundGen {
 
+    private static final String USAGE =
+            "Usage: SoundGen [-o output.wav] [-t threads] [-a blocks] [-c megabytes] [-s notes] [-v voices] [-f]"
+                    + " [-b bits] [-d] [-n channels] [-r seed] [-l block-ms [-L buffer-ms]] [-w] [-p prelude]"
+                    + " [-i image] [-m] music-file";
+
     /**
-     * @param args the first argument is the name of the music file to play
+     * Usage: SoundGen [-o output.wav] [-t threads] [-a blocks] [-c megabytes] [-s notes] [-v voices] [-f]
+     * [-b bits] [-d] [-n channels] [-r seed] [-l block-ms [-L buffer-ms]] [-w] [-p prelude] [-i image] [-m]
+     * music-file
+     * <p>
+     * With -o, the music is rendered to a WAV file as fast as possible, without needing an audio device;
+     * otherwise it is played. With -t, channels are rendered in parallel on the given number of threads.
+     * With -a, playback renders ahead by the given number of blocks (0 to render in step with the audio line).
+     * With -c, rendered notes are cached up to the given size (0 for no cache).
+     * With -s, the score is streamed: playback starts straight away, while the notes are built on another thread up
+     * to the given number ahead in each channel.
+     * With -v, each channel of note events has the given number of voices.
+     * With -f, samples are rendered and mixed in single precision.
+     * With -b, the output has the given sample size: 8, 16 (the default), 24 or 32 bit integers, or 32f for floats.
+     * With -d, integer output samples are dithered.
+     * With -n, the output has the given number of channels (2 for stereo), over which the tune's channels are panned.
+     * With -r, the noise instruments are seeded with the given number (by default 0), so each seed gives a
+     * different but repeatable rendering.
+     * With -l, playback is in real time, for low latency: blocks of the given number of milliseconds are rendered
+     * straight to an audio line with a buffer of 4 blocks, or of the number of milliseconds given with -L, and the
+     * note cache is turned off, since a miss would render a whole note at once. The measured latency and the number
+     * of blocks that missed their deadline are printed at the end.
+     * With -w, the music file is watched while it plays, for live coding: when it is saved, the blocks from the
+     * first changed one on are evaluated again in the same interpreter, and the new channels take over at the next
+     * block, carrying on from the same point in the tune. The score is then built eagerly, rather than streamed.
+     * With -p, the given file (in the same format as a music file) is evaluated before the music file, e.g. to
+     * define functions shared by several tunes.
+     * With -i, the interpreter is restored from the given image file, which is much quicker than starting it from
+     * scratch; if the file doesn't exist or is older than the prelude, it is written after the prelude is evaluated.
+     * With -m, render statistics are printed at the end.
+     *
+     * @param args the options, followed by the name of the music file to play
      */
     public static void main(String[] args) {
         try {
-            playMusic(args[0]);
+            SoundGen soundGen = new SoundGen();
+            String filename = null;
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-o") && i + 1 < args.length)
+                    soundGen.wavFile = new File(args[++i]);
+                else if (args[i].equals("-t") && i + 1 < args.length)
+                    soundGen.threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-a") && i + 1 < args.length)
+                    soundGen.renderAhead = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-c") && i + 1 < args.length)
+                    soundGen.cacheMegabytes = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-s") && i + 1 < args.length)
+                    soundGen.streamWindow = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-v") && i + 1 < args.length)
+                    soundGen.voices = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-f"))
+                    soundGen.singlePrecision = true;
+                else if (args[i].equals("-b") && i + 1 < args.length)
+                    soundGen.setBits(args[++i]);
+                else if (args[i].equals("-d"))
+                    soundGen.dither = true;
+                else if (args[i].equals("-n") && i + 1 < args.length)
+                    soundGen.outputChannels = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-r") && i + 1 < args.length)
+                    soundGen.seed = Long.parseLong(args[++i]);
+                else if (args[i].equals("-l") && i + 1 < args.length)
+                    soundGen.blockMillis = Double.parseDouble(args[++i]);
+                else if (args[i].equals("-L") && i + 1 < args.length)
+                    soundGen.bufferMillis = Double.parseDouble(args[++i]);
+                else if (args[i].equals("-w"))
+                    soundGen.watch = true;
+                else if (args[i].equals("-p") && i + 1 < args.length)
+                    soundGen.prelude = new File(args[++i]);
+                else if (args[i].equals("-i") && i + 1 < args.length)
+                    soundGen.image = new File(args[++i]);
+                else if (args[i].equals("-m"))
+                    soundGen.statistics = new RenderStatistics();
+                else
+                    filename = args[i];
+            }
+            if (filename == null) {
+                System.err.println(USAGE);
+                return;
+            }
+            soundGen.run(filename);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private static void playMusic(String filename) throws IOException {
-        SamplerParams params = new SamplerParams(44100, 16, 1);
-        Music music = new Music(new File(filename));
+    private static final int SAMPLE_RATE = 44100;
+
+    // render-ahead ring for playback: 16 blocks of 4K bytes is about 0.75 seconds of 16 bit mono at 44.1kHz, more
+    // than a block of rendering, and as much audio as it holds is queued ahead of the line
+    private static final int RENDER_AHEAD_BLOCK_SIZE = 4096;
+    private static final int RENDER_AHEAD_DEPTH = 16;
+
+    private static final int NOTE_CACHE_MEGABYTES = 64;
+
+    private int bits = 16;
+    private boolean floatEncoding = false;
+    private boolean singlePrecision = false;
+    private boolean dither = false;
+    private int outputChannels = 1;
+    private long seed = 0;
+    private double blockMillis = 0;
+    private double bufferMillis = 0;
+    private boolean watch = false;
+    private File prelude = null;
+    private File image = null;
+    private File wavFile = null;
+    private int threads = 1;
+    private int renderAhead = RENDER_AHEAD_DEPTH;
+    private int cacheMegabytes = NOTE_CACHE_MEGABYTES;
+    private int streamWindow = 0;
+    private int voices = Music.VOICES;
+    private RenderStatistics statistics = null;
+
+    private void setBits(String arg) {
+        floatEncoding = arg.endsWith("f");
+        bits = Integer.parseInt(floatEncoding ? arg.substring(0, arg.length() - 1) : arg);
+    }
+
+    private void run(String filename) throws IOException {
+        SamplerParams params = new SamplerParams(SAMPLE_RATE, bits, outputChannels, singlePrecision, floatEncoding);
+        RenderMetrics metrics = (statistics != null ? statistics : RenderMetrics.NONE);
+        boolean realTime = (blockMillis > 0);
+        int blockSize = (realTime ? Math.max(1, (int) (blockMillis * SAMPLE_RATE / 1000)) : 0);
+        MultiChannelPlayer player = new MultiChannelPlayer(threads, metrics, dither, blockSize);
+        NoteCache cache = (cacheMegabytes > 0 && !realTime ? new NoteCache(cacheMegabytes * 1024L * 1024L) : null);
+        File file = new File(filename);
+        TuneEvaluator evaluator = new TuneEvaluator(InterpreterImage.start(prelude, image));
+        // a watched tune plays until the end of whichever version is playing, so its duration isn't fixed
+        try (Music music = new Music(evaluator.getInterpreter(), evaluator.evaluate(file),
+                (watch ? 0 : streamWindow), seed);
+             TuneWatcher watcher = (watch ? new TuneWatcher(file, evaluator, player, params, cache, metrics, voices,
+                     seed) : null)) {
+            List<? extends Sampler> samplers = music.getSamplers(params, cache, metrics, voices);
+            EffectChain[] master = music.getMasterEffects(params);
+            int duration = (music.isStreaming() || watch
+                    ? -1 : music.getLength(params));
+            if (watcher != null)
+                watcher.start();
+
+            if (wavFile != null) {
+                player.play(samplers, master, duration, params, new WavFileOutput(wavFile, params));
+            } else if (realTime) {
+                int bufferFrames = (bufferMillis > 0 ? (int) (bufferMillis * SAMPLE_RATE / 1000) : 4 * blockSize);
+                LineOutput output = new LineOutput(params, bufferFrames);
+                player.play(samplers, master, duration, params, output);
+                printLatency(player, output, blockSize);
+            } else if (renderAhead <= 0) {
+                player.play(samplers, master, duration, params, new LineOutput(params));
+            } else {
+                // whole frames in each block
+                int blockBytes = RENDER_AHEAD_BLOCK_SIZE - RENDER_AHEAD_BLOCK_SIZE % params.getFrameSize();
+                RenderAheadOutput output = new RenderAheadOutput(new LineOutput(params), blockBytes, renderAhead);
+                player.play(samplers, master, duration, params, output);
+                System.err.println("Render-ahead: " + output.getUnderruns() + " underruns");
+            }
+        }
+
+        if (cache != null)
+            System.err.println(cache);
+        if (statistics != null)
+            System.err.println(statistics);
+    }
 
-        List<? extends Sampler> samplers = music.getSamplers(params);
-        int duration = (int) (music.getDuration() * params.getSampleRate());
-        MultiChannelPlayer player = new MultiChannelPlayer();
-        player.play(samplers, duration, params);
+    // a block's first sample is heard once the block has been rendered and the audio queued ahead of it has played
+    private static void printLatency(MultiChannelPlayer player, LineOutput output, int blockSize) {
+        double ms = 1e-6;
+        System.err.printf("Real-time: blocks of %.1f ms, line buffer of %.1f ms%n",
+                blockSize * 1000.0 / SAMPLE_RATE, output.getBufferFrames() * 1000.0 / SAMPLE_RATE);
+        System.err.printf("Latency: mean %.1f ms (render %.2f ms + queued %.1f ms), max %.1f ms%n",
+                (player.getMeanBlockNanos() + output.getMeanQueuedNanos()) * ms,
+                player.getMeanBlockNanos() * ms, output.getMeanQueuedNanos() * ms,
+                (player.getMaxBlockNanos() + output.getMaxQueuedNanos()) * ms);
+        System.err.println("Deadline misses: " + player.getDeadlineMisses() + " of " + player.getBlocks()
+                + " blocks, " + output.getUnderruns() + " line underruns");
     }
 
 }
@@ -10,4 +10,8 @@ class SoundGenException extends RuntimeException {
         super(arg0);
     }
 
+    SoundGenException(String arg0, Throwable arg1) {
+        super(arg0, arg1);
+    }
+
 }
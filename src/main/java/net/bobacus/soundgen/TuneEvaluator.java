@@ -0,0 +1,127 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jatha.Jatha;
+import org.jatha.dynatype.LispValue;
+
+/**
+ * Evaluates the Lisp expressions of a music file in an interpreter which is kept warm between evaluations.
+ * <p>
+ * A music file is a sequence of blocks, each ended by a line containing just a full stop. When the file is evaluated
+ * again, each block is compared with the one evaluated before it (by hash, then text), and only the first block that
+ * has changed and those after it are evaluated, in the same interpreter; the values of the unchanged blocks before
+ * it are kept. As the interpreter keeps its state, a definition that has been deleted from the file stays defined
+ * until the interpreter is discarded.
+ * <p>
+ * Not thread-safe: the interpreter must only be used by one thread at a time.
+ */
+class TuneEvaluator {
+
+    TuneEvaluator() {
+        this(newInterpreter());
+    }
+
+    /**
+     * @param lisp a started interpreter, which may already hold definitions (e.g. from a prelude)
+     */
+    TuneEvaluator(Jatha lisp) {
+        this.lisp = lisp;
+    }
+
+    private final Jatha lisp;
+
+    // the blocks last evaluated, their hashes, and their values
+    private final List<String> blocks = new ArrayList<>();
+    private final List<Integer> hashes = new ArrayList<>();
+    private final List<LispValue> values = new ArrayList<>();
+
+    private int evaluated = 0;
+
+    Jatha getInterpreter() {
+        return lisp;
+    }
+
+    /**
+     * @return the number of blocks in the file when it was last evaluated
+     */
+    int getBlocks() {
+        return blocks.size();
+    }
+
+    /**
+     * @return the number of blocks evaluated by the last call to {@link #evaluate}
+     */
+    int getEvaluatedBlocks() {
+        return evaluated;
+    }
+
+    /**
+     * @param file the music file
+     * @return the value of the file's last block, or null if the file has not changed since it was last evaluated
+     * @throws SoundGenException if the file has no blocks
+     */
+    LispValue evaluate(File file) throws IOException {
+        List<String> newBlocks = readBlocks(file);
+        if (newBlocks.isEmpty())
+            throw new SoundGenException("No Lisp evaluation happened");
+        int first = 0;
+        while (first < newBlocks.size() && first < blocks.size() && isSame(first, newBlocks.get(first)))
+            first++;
+        evaluated = 0;
+        if (first == newBlocks.size() && first == blocks.size())
+            return null;
+
+        // forget the changed blocks first, so that a failure leaves them to be evaluated next time
+        truncate(first);
+        for (int i = first; i < newBlocks.size(); i++) {
+            String block = newBlocks.get(i);
+            LispValue value = lisp.eval(block);
+            evaluated++;
+            blocks.add(block);
+            hashes.add(block.hashCode());
+            values.add(value);
+        }
+        truncate(newBlocks.size());
+        return values.get(values.size() - 1);
+    }
+
+    private boolean isSame(int index, String block) {
+        return hashes.get(index) == block.hashCode() && blocks.get(index).equals(block);
+    }
+
+    private void truncate(int size) {
+        while (blocks.size() > size) {
+            int last = blocks.size() - 1;
+            blocks.remove(last);
+            hashes.remove(last);
+            values.remove(last);
+        }
+    }
+
+    private static Jatha newInterpreter() {
+        Jatha lisp = new Jatha(false, false);
+        lisp.init();
+        lisp.start();
+        return lisp;
+    }
+
+    private static List<String> readBlocks(File file) throws IOException {
+        List<String> blocks = new ArrayList<>();
+        StringBuilder sExpression = new StringBuilder();
+        for (String l : Files.readAllLines(file.toPath())) {
+            if (l.equals(".")) {
+                blocks.add(sExpression.toString());
+                sExpression = new StringBuilder();
+            } else {
+                sExpression.append(l);
+            }
+        }
+        return blocks;
+    }
+
+}
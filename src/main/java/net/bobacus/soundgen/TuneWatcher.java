@@ -0,0 +1,104 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+import java.util.List;
+
+import org.jatha.dynatype.LispValue;
+
+import net.bobacus.soundgen.metrics.RenderMetrics;
+import net.bobacus.soundgen.sampler.NoteCache;
+import net.bobacus.soundgen.sampler.Sampler;
+import net.bobacus.soundgen.sampler.SamplerParams;
+
+/**
+ * Watches a music file while it is being played, and when the file is saved, re-evaluates the blocks that have
+ * changed and swaps the new channels into the player at its next block, for live coding.
+ * <p>
+ * If the file can't be evaluated, the error is printed and the old tune carries on playing.
+ */
+class TuneWatcher implements AutoCloseable {
+
+    private static final long POLL_MILLIS = 250;
+
+    /**
+     * @param file      the music file, which must already have been evaluated by the evaluator
+     * @param evaluator the evaluator holding the warm interpreter
+     * @param player    the player to give the new channels to
+     * @param params    the sampler parameters the player is using
+     * @param cache     cache of rendered notes, or null for none
+     * @param metrics   receives note timings
+     * @param voices    the number of voices for each channel of note events
+     * @param seed      the seed for the instruments' random number generators
+     */
+    TuneWatcher(File file, TuneEvaluator evaluator, MultiChannelPlayer player, SamplerParams params,
+                NoteCache cache, RenderMetrics metrics, int voices, long seed) {
+        this.file = file;
+        this.evaluator = evaluator;
+        this.player = player;
+        this.params = params;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.voices = voices;
+        this.seed = seed;
+        lastModified = file.lastModified();
+        thread = new Thread(this::watch, "tune-watcher");
+        thread.setDaemon(true);
+    }
+
+    private final File file;
+    private final TuneEvaluator evaluator;
+    private final MultiChannelPlayer player;
+    private final SamplerParams params;
+    private final NoteCache cache;
+    private final RenderMetrics metrics;
+    private final int voices;
+    private final long seed;
+    private final Thread thread;
+
+    private long lastModified;
+
+    void start() {
+        thread.start();
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(POLL_MILLIS);
+                long modified = file.lastModified();
+                if (modified != lastModified) {
+                    lastModified = modified;
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Re-evaluates the file, and if it has changed, gives the new channels to the player.
+     */
+    void reload() {
+        long t = System.nanoTime();
+        try {
+            LispValue result = evaluator.evaluate(file);
+            if (result == null)
+                return;
+            // the score is built eagerly, since the interpreter is not free to call generators during playback
+            Music music = new Music(evaluator.getInterpreter(), result, 0, seed);
+            List<? extends Sampler> samplers = music.getSamplers(params, cache, metrics, voices);
+            player.replace(samplers, music.getMasterEffects(params), params);
+            System.err.printf("Reloaded %s: evaluated %d of %d blocks in %.1f ms%n", file.getName(),
+                    evaluator.getEvaluatedBlocks(), evaluator.getBlocks(), (System.nanoTime() - t) * 1e-6);
+        } catch (Exception e) {
+            System.err.println("Reload failed, still playing the old tune: " + e);
+        }
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+
+}
@@ -0,0 +1,66 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.bobacus.soundgen.sampler.SamplerParams;
+
+/**
+ * Writes PCM data to a RIFF/WAV file, as fast as it is supplied.
+ * <p>
+ * The header is written with zero sizes when the file is opened, and the sizes are filled in on close.
+ */
+class WavFileOutput extends PcmFileOutput {
+
+    private static final int HEADER_SIZE = 44;
+    // the RIFF size is an unsigned 32 bit number, which covers the header after it and the padded data
+    private static final long MAX_RIFF_SIZE = 0xFFFFFFFFL;
+
+    /**
+     * @param file   the file to create or overwrite
+     * @param params the sampler parameters
+     * @throws SoundGenException if the file could not be opened
+     */
+    WavFileOutput(File file, SamplerParams params) {
+        super(file);
+        int blockAlign = params.getFrameSize();
+        buffer.put(new byte[]{'R', 'I', 'F', 'F'})
+                .putInt(0)
+                .put(new byte[]{'W', 'A', 'V', 'E'})
+                .put(new byte[]{'f', 'm', 't', ' '})
+                .putInt(16)
+                .putShort((short) (params.isFloatEncoding() ? 3 : 1)) // IEEE float or integer PCM
+                .putShort((short) params.getChannels())
+                .putInt(params.getSampleRate())
+                .putInt(params.getSampleRate() * blockAlign)
+                .putShort((short) blockAlign)
+                .putShort((short) params.getBits())
+                .put(new byte[]{'d', 'a', 't', 'a'})
+                .putInt(0);
+    }
+
+    @Override
+    long getMaxDataSize() {
+        return MAX_RIFF_SIZE - (HEADER_SIZE - 8) - 1;
+    }
+
+    @Override
+    void finish() throws IOException {
+        // RIFF chunks are padded to an even length
+        if (dataSize % 2 != 0) {
+            buffer.put((byte) 0);
+            flush();
+        }
+        writeAt(4, (int) (HEADER_SIZE - 8 + dataSize + dataSize % 2));
+        writeAt(HEADER_SIZE - 4, (int) dataSize);
+    }
+
+    private void writeAt(long position, int value) throws IOException {
+        buffer.putInt(value);
+        buffer.flip();
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+        buffer.clear();
+    }
+
+}
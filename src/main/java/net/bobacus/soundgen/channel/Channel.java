@@ -8,20 +8,74 @@ import net.bobacus.soundgen.synth.Sound;
 
 /**
  * A Channel is a sequence of Sounds
+ * <p>
+ * The sounds may be read from their source when the channel is created, or lazily as they are asked for, so that a
+ * channel can be played while its source is still producing it. A lazy channel is not thread-safe.
+ * <p>
+ * A channel also has a pan and gain, which place it in the mix.
  */
 public class Channel {
 
     public Channel(Iterator<Sound> i) {
+        this(i, true);
+    }
+
+    /**
+     * @param i     the source of the sounds
+     * @param eager true to read all the sounds now, false to read each one when it is first asked for
+     */
+    public Channel(Iterator<Sound> i, boolean eager) {
         mSounds = new ArrayList<>();
-        while (i.hasNext())
-            mSounds.add(i.next());
+        mSource = i;
+        if (eager)
+            getSounds();
     }
 
 
     private final ArrayList<Sound> mSounds;
+    private final Iterator<Sound> mSource;
+    private double mPan = 0;
+    private double mGain = 1;
+
+    /**
+     * @return the position of the channel in the output, from -1 (left) through 0 (centre) to 1 (right)
+     */
+    public double getPan() {
+        return mPan;
+    }
 
+    public void setPan(double pan) {
+        mPan = pan;
+    }
+
+    /**
+     * @return the factor the channel's samples are multiplied by in the mix
+     */
+    public double getGain() {
+        return mGain;
+    }
+
+    public void setGain(double gain) {
+        mGain = gain;
+    }
+
+    /**
+     * @param index the index of the sound
+     * @return the sound, reading it (and any before it) from the source if necessary,
+     * or null if the channel has fewer sounds
+     */
+    public Sound getSound(int index) {
+        while (mSounds.size() <= index && mSource.hasNext())
+            mSounds.add(mSource.next());
+        return (index < mSounds.size() ? mSounds.get(index) : null);
+    }
+
+    /**
+     * @return all the sounds, reading any that are left from the source
+     */
     public List<Sound> getSounds() {
+        while (mSource.hasNext())
+            mSounds.add(mSource.next());
         return mSounds;
     }
 }
-
@@ -0,0 +1,77 @@
+package net.bobacus.soundgen.channel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An EventChannel is a sequence of NoteEvents, in order of their start times, whose sounds may overlap
+ * <p>
+ * Like a {@link Channel}, the events may be read from their source when the channel is created, or lazily as they are
+ * asked for. A lazy channel is not thread-safe. It has a pan and gain in the same way.
+ */
+public class EventChannel {
+
+    public EventChannel(Iterator<NoteEvent> i) {
+        this(i, true);
+    }
+
+    /**
+     * @param i     the source of the events, in order of their start times
+     * @param eager true to read all the events now, false to read each one when it is first asked for
+     */
+    public EventChannel(Iterator<NoteEvent> i, boolean eager) {
+        mEvents = new ArrayList<>();
+        mSource = i;
+        if (eager)
+            getEvents();
+    }
+
+
+    private final ArrayList<NoteEvent> mEvents;
+    private final Iterator<NoteEvent> mSource;
+    private double mPan = 0;
+    private double mGain = 1;
+
+    /**
+     * @return the position of the channel in the output, from -1 (left) through 0 (centre) to 1 (right)
+     */
+    public double getPan() {
+        return mPan;
+    }
+
+    public void setPan(double pan) {
+        mPan = pan;
+    }
+
+    /**
+     * @return the factor the channel's samples are multiplied by in the mix
+     */
+    public double getGain() {
+        return mGain;
+    }
+
+    public void setGain(double gain) {
+        mGain = gain;
+    }
+
+    /**
+     * @param index the index of the event
+     * @return the event, reading it (and any before it) from the source if necessary,
+     * or null if the channel has fewer events
+     */
+    public NoteEvent getEvent(int index) {
+        while (mEvents.size() <= index && mSource.hasNext())
+            mEvents.add(mSource.next());
+        return (index < mEvents.size() ? mEvents.get(index) : null);
+    }
+
+    /**
+     * @return all the events, reading any that are left from the source
+     */
+    public List<NoteEvent> getEvents() {
+        while (mSource.hasNext())
+            mEvents.add(mSource.next());
+        return mEvents;
+    }
+}
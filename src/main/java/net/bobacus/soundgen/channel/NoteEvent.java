@@ -0,0 +1,29 @@
+package net.bobacus.soundgen.channel;
+
+import net.bobacus.soundgen.synth.Sound;
+
+/**
+ * A NoteEvent is a Sound which starts at a given time, so that it may overlap others
+ */
+public class NoteEvent {
+
+    /**
+     * @param start the start time, in seconds from the beginning of the channel
+     * @param sound the sound to play
+     */
+    public NoteEvent(double start, Sound sound) {
+        this.start = start;
+        this.sound = sound;
+    }
+
+    private final double start;
+    private final Sound sound;
+
+    public double getStart() {
+        return start;
+    }
+
+    public Sound getSound() {
+        return sound;
+    }
+}
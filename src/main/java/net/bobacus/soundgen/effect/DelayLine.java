@@ -0,0 +1,39 @@
+package net.bobacus.soundgen.effect;
+
+/**
+ * A ring buffer of the last so many samples, allocated once. The effects that use one read and write it in loops of
+ * their own over a block, keeping the index in a local variable, and store the index back at the end.
+ */
+final class DelayLine {
+
+    /**
+     * A level far below anything audible, which the feedback loops of the effects add to what they feed back, so that
+     * a decay to silence levels off there rather than going on into denormal numbers, which are very slow to compute.
+     */
+    static final double TINY = 1e-18;
+
+    // the level, 60dB down, at which a decay is taken to have died away
+    private static final double DECAYED = 1e-3;
+
+    /**
+     * @param period the number of samples between steps of the decay
+     * @param gain   the factor the level is multiplied by at each step, less than 1 in magnitude
+     * @return the number of samples until a decay has died away
+     */
+    static int getDecayLength(int period, double gain) {
+        if (gain == 0)
+            return 0;
+        return period * (int) Math.ceil(Math.log(DECAYED) / Math.log(Math.abs(gain)));
+    }
+
+    /**
+     * @param length the delay in samples, at least 1
+     */
+    DelayLine(int length) {
+        buffer = new double[Math.max(1, length)];
+    }
+
+    final double[] buffer;
+    int index = 0;
+
+}
@@ -0,0 +1,27 @@
+package net.bobacus.soundgen.effect;
+
+/**
+ * An audio effect, which processes a channel's samples a block at a time, in place.
+ * <p>
+ * An effect may have state (e.g. a delay line), which carries on from one block to the next, so each instance
+ * must be given one stream of consecutive blocks, from one thread at a time. Effects allocate everything they need
+ * when they are created, so that processing a block allocates nothing.
+ */
+public interface Effect {
+
+    /**
+     * @param buffer the samples to process, which are replaced by the output
+     * @param offset index of the first sample
+     * @param count  number of samples
+     */
+    void process(double[] buffer, int offset, int count);
+
+    /**
+     * @return the number of samples the effect's output goes on for after its input falls silent, e.g. the echoes of
+     * a delay, until it has died away by 60dB
+     */
+    default int getTailLength() {
+        return 0;
+    }
+
+}
@@ -0,0 +1,64 @@
+package net.bobacus.soundgen.effect;
+
+import java.util.List;
+
+/**
+ * A sequence of effects, each processing the output of the one before.
+ */
+public final class EffectChain {
+
+    /**
+     * @param effects   the effects, in order
+     * @param blockSize the number of samples processed at a time in single precision; larger blocks are processed
+     *                  in pieces this size
+     */
+    public EffectChain(List<? extends Effect> effects, int blockSize) {
+        this.effects = effects.toArray(new Effect[0]);
+        scratch = new double[blockSize];
+    }
+
+    private final Effect[] effects;
+    // single precision samples are widened into this, processed, and narrowed again
+    private final double[] scratch;
+
+    public boolean isEmpty() {
+        return effects.length == 0;
+    }
+
+    /**
+     * @return the number of samples the chain's output goes on for after its input falls silent: the tails of the
+     * effects, each of which follows on from the tails of the ones before
+     */
+    public int getTailLength() {
+        int length = 0;
+        for (Effect effect : effects) {
+            length += effect.getTailLength();
+        }
+        return length;
+    }
+
+    public void process(double[] buffer, int offset, int count) {
+        for (Effect effect : effects) {
+            effect.process(buffer, offset, count);
+        }
+    }
+
+    /**
+     * Single precision version of {@link #process(double[], int, int)}: the effects work in double precision, and
+     * only the output is narrowed.
+     */
+    public void process(float[] buffer, int offset, int count) {
+        for (int done = 0; done < count; ) {
+            int n = Math.min(scratch.length, count - done);
+            for (int i = 0; i < n; i++) {
+                scratch[i] = buffer[offset + done + i];
+            }
+            process(scratch, 0, n);
+            for (int i = 0; i < n; i++) {
+                buffer[offset + done + i] = (float) scratch[i];
+            }
+            done += n;
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package net.bobacus.soundgen.effect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The settings for an effect, as given in a tune, from which effects can be created for each channel that uses it.
+ * <p>
+ * The effects, with their arguments, are:
+ * <ul>
+ * <li>gain: the factor to multiply by</li>
+ * <li>clip: the drive of a {@link SoftClip}</li>
+ * <li>delay: a {@link FeedbackDelay}'s time between echoes in seconds, feedback, and mix</li>
+ * <li>reverb: a {@link Reverb}'s room size, damping and wet level</li>
+ * <li>lowpass: the cutoff frequency of a {@link LowPass}, in Hz</li>
+ * </ul>
+ */
+public final class EffectSpec {
+
+    /**
+     * @param name the name of the effect, in any case
+     * @param args the effect's arguments
+     * @throws IllegalArgumentException if there is no such effect, the number of arguments is wrong, or the
+     *                                  effect would never die away
+     */
+    public EffectSpec(String name, double... args) {
+        this.name = name.toLowerCase();
+        this.args = args.clone();
+        int expected = getArgumentCount(this.name);
+        if (expected < 0)
+            throw new IllegalArgumentException("No such effect: " + name);
+        if (args.length != expected)
+            throw new IllegalArgumentException("The " + this.name + " effect takes " + expected + " arguments, not "
+                    + args.length);
+        if (this.name.equals("delay") && !(Math.abs(args[1]) < 1))
+            throw new IllegalArgumentException("The delay's feedback must be less than 1 in magnitude, not "
+                    + args[1]);
+        if (this.name.equals("reverb") && !(args[0] >= 0 && args[0] <= 1))
+            throw new IllegalArgumentException("The reverb's room size must be from 0 to 1, not " + args[0]);
+        if (this.name.equals("lowpass") && !(args[0] > 0 && args[0] < Double.POSITIVE_INFINITY))
+            throw new IllegalArgumentException("The lowpass cutoff must be a positive frequency, not " + args[0]);
+    }
+
+    private final String name;
+    private final double[] args;
+
+    private static int getArgumentCount(String name) {
+        switch (name) {
+            case "gain":
+            case "clip":
+            case "lowpass":
+                return 1;
+            case "delay":
+            case "reverb":
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @param sampleRate the sample rate, in Hz
+     * @param blockSize  the largest number of samples the effect will usually be given at once
+     * @return a new effect, with its own state
+     */
+    public Effect create(int sampleRate, int blockSize) {
+        switch (name) {
+            case "gain":
+                return new Gain(args[0]);
+            case "clip":
+                return new SoftClip(args[0]);
+            case "lowpass":
+                return new LowPass(args[0], sampleRate);
+            case "delay":
+                return new FeedbackDelay(getDelay(sampleRate), args[1], args[2]);
+            default:
+                return new Reverb(args[0], args[1], args[2], sampleRate, blockSize);
+        }
+    }
+
+    /**
+     * @param sampleRate the sample rate, in Hz
+     * @return the number of samples the effect's output goes on for after its input falls silent, as given by
+     * {@link Effect#getTailLength()}
+     */
+    public int getTailLength(int sampleRate) {
+        switch (name) {
+            case "lowpass":
+                return LowPass.getTailLength(args[0], sampleRate);
+            case "delay":
+                return FeedbackDelay.getTailLength(getDelay(sampleRate), args[1]);
+            case "reverb":
+                return Reverb.getTailLength(args[0], sampleRate);
+            default:
+                return 0;
+        }
+    }
+
+    private int getDelay(int sampleRate) {
+        return Math.max(1, (int) Math.round(args[0] * sampleRate));
+    }
+
+    /**
+     * @return the tail length of a chain of the effects, as given by {@link EffectChain#getTailLength()}
+     */
+    public static int getTailLength(List<EffectSpec> specs, int sampleRate) {
+        int length = 0;
+        for (EffectSpec spec : specs) {
+            length += spec.getTailLength(sampleRate);
+        }
+        return length;
+    }
+
+    /**
+     * @return a new chain of the effects, each with its own state
+     */
+    public static EffectChain createChain(List<EffectSpec> specs, int sampleRate, int blockSize) {
+        List<Effect> effects = new ArrayList<>();
+        for (EffectSpec spec : specs) {
+            effects.add(spec.create(sampleRate, blockSize));
+        }
+        return new EffectChain(effects, blockSize);
+    }
+
+    @Override
+    public String toString() {
+        return name + Arrays.toString(args);
+    }
+
+}
@@ -0,0 +1,54 @@
+package net.bobacus.soundgen.effect;
+
+/**
+ * An echo: the input delayed by a fixed time, fed back into the delay so that it repeats, more quietly each time,
+ * and mixed with the input.
+ */
+public final class FeedbackDelay implements Effect {
+
+    /**
+     * @param delay    the time between echoes, in samples
+     * @param feedback the level of each echo relative to the one before, less than 1 in magnitude
+     * @param mix      the level of the echoes in the output, relative to the input
+     * @throws IllegalArgumentException if the feedback is 1 or more in magnitude, so the echoes would never die away
+     */
+    public FeedbackDelay(int delay, double feedback, double mix) {
+        if (!(Math.abs(feedback) < 1))
+            throw new IllegalArgumentException("The feedback must be less than 1 in magnitude, not " + feedback);
+        line = new DelayLine(delay);
+        this.feedback = feedback;
+        this.mix = mix;
+    }
+
+    private final DelayLine line;
+    private final double feedback;
+    private final double mix;
+
+    /**
+     * @return the number of samples until the echoes of a delay have died away
+     */
+    static int getTailLength(int delay, double feedback) {
+        return delay + DelayLine.getDecayLength(delay, feedback);
+    }
+
+    @Override
+    public int getTailLength() {
+        return getTailLength(line.buffer.length, feedback);
+    }
+
+    @Override
+    public void process(double[] buffer, int offset, int count) {
+        double[] d = line.buffer;
+        int j = line.index;
+        for (int i = offset; i < offset + count; i++) {
+            double x = buffer[i];
+            double echo = d[j];
+            d[j] = x + feedback * echo + DelayLine.TINY;
+            buffer[i] = x + mix * echo;
+            if (++j == d.length)
+                j = 0;
+        }
+        line.index = j;
+    }
+
+}
@@ -0,0 +1,21 @@
+package net.bobacus.soundgen.effect;
+
+/**
+ * Multiplies the samples by a constant factor.
+ */
+public final class Gain implements Effect {
+
+    public Gain(double gain) {
+        this.gain = gain;
+    }
+
+    private final double gain;
+
+    @Override
+    public void process(double[] buffer, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            buffer[i] *= gain;
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package net.bobacus.soundgen.effect;
+
+/**
+ * A one-pole low-pass filter, which rolls off frequencies above its cutoff at 6dB per octave.
+ */
+public final class LowPass implements Effect {
+
+    /**
+     * @param cutoff     the cutoff frequency, in Hz
+     * @param sampleRate the sample rate, in Hz
+     * @throws IllegalArgumentException if the cutoff is not positive, so the output would never die away
+     */
+    public LowPass(double cutoff, int sampleRate) {
+        if (!(cutoff > 0 && cutoff < Double.POSITIVE_INFINITY))
+            throw new IllegalArgumentException("The cutoff must be a positive frequency, not " + cutoff);
+        a = getCoefficient(cutoff, sampleRate);
+    }
+
+    private final double a;
+    private double y = 0;
+
+    private static double getCoefficient(double cutoff, int sampleRate) {
+        return 1 - Math.exp(-2 * Math.PI * cutoff / sampleRate);
+    }
+
+    /**
+     * @return the number of samples until the filter's output has died away after its input stops
+     */
+    static int getTailLength(double cutoff, int sampleRate) {
+        return DelayLine.getDecayLength(1, 1 - getCoefficient(cutoff, sampleRate));
+    }
+
+    @Override
+    public int getTailLength() {
+        return DelayLine.getDecayLength(1, 1 - a);
+    }
+
+    @Override
+    public void process(double[] buffer, int offset, int count) {
+        double y = this.y;
+        for (int i = offset; i < offset + count; i++) {
+            // the tiny offset keeps a decay to silence from ending in denormals, which are slow
+            y += a * (buffer[i] + DelayLine.TINY - y);
+            buffer[i] = y;
+        }
+        this.y = y;
+    }
+
+}
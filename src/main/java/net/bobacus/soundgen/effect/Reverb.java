@@ -0,0 +1,176 @@
+package net.bobacus.soundgen.effect;
+
+/**
+ * A reverb, after Jezar's Freeverb (a Schroeder reverb): eight low-pass feedback comb filters in parallel, followed
+ * by four all-pass filters in series, with their delays tuned for 44.1kHz and scaled for other sample rates. The
+ * reverberation is added to the input.
+ * <p>
+ * The filters are run over the whole block, four combs at a time and then each all-pass filter, keeping their
+ * delay lines and state in local variables.
+ */
+public final class Reverb implements Effect {
+
+    private static final int[] COMB_DELAYS = {1116, 1188, 1277, 1356, 1422, 1491, 1557, 1617};
+    private static final int[] ALLPASS_DELAYS = {556, 441, 341, 225};
+    private static final double ALLPASS_FEEDBACK = 0.5;
+    // the input level into the combs, and the output level of the reverberation, as in Freeverb
+    private static final double INPUT_GAIN = 0.015;
+    private static final double WET_SCALE = 3;
+
+    /**
+     * @param roomSize   from 0 to 1: the larger the room, the longer the reverberation
+     * @param damping    from 0 to 1: how much more quickly high frequencies die away than low ones
+     * @param wet        the level of the reverberation, from 0 to 1
+     * @param sampleRate the sample rate, in Hz
+     * @param blockSize  the number of samples to process at a time; larger blocks are processed in pieces this size
+     * @throws IllegalArgumentException if the room size is not from 0 to 1
+     */
+    public Reverb(double roomSize, double damping, double wet, int sampleRate, int blockSize) {
+        if (!(roomSize >= 0 && roomSize <= 1))
+            throw new IllegalArgumentException("The room size must be from 0 to 1, not " + roomSize);
+        double scale = sampleRate / 44100.0;
+        combs = new Comb[COMB_DELAYS.length];
+        for (int c = 0; c < combs.length; c++) {
+            combs[c] = new Comb((int) (COMB_DELAYS[c] * scale), getCombFeedback(roomSize), damping * 0.4);
+        }
+        allpasses = new DelayLine[ALLPASS_DELAYS.length];
+        for (int a = 0; a < allpasses.length; a++) {
+            allpasses[a] = new DelayLine((int) (ALLPASS_DELAYS[a] * scale));
+        }
+        this.wet = wet * WET_SCALE;
+        input = new double[blockSize];
+        reverb = new double[blockSize];
+        tailLength = getTailLength(roomSize, sampleRate);
+    }
+
+    private final Comb[] combs;
+    private final DelayLine[] allpasses;
+    private final double wet;
+    // the block of input to the combs, and the reverberation they add up to
+    private final double[] input;
+    private final double[] reverb;
+    private final int tailLength;
+
+    private static double getCombFeedback(double roomSize) {
+        return roomSize * 0.28 + 0.7;
+    }
+
+    /**
+     * @return the number of samples until the reverberation has died away, going by the longest comb, with the
+     * all-pass filters' own ringing after it
+     */
+    static int getTailLength(double roomSize, int sampleRate) {
+        double scale = sampleRate / 44100.0;
+        int length = DelayLine.getDecayLength((int) (COMB_DELAYS[COMB_DELAYS.length - 1] * scale),
+                getCombFeedback(roomSize));
+        for (int delay : ALLPASS_DELAYS) {
+            length += DelayLine.getDecayLength((int) (delay * scale), ALLPASS_FEEDBACK);
+        }
+        return length;
+    }
+
+    @Override
+    public int getTailLength() {
+        return tailLength;
+    }
+
+    @Override
+    public void process(double[] buffer, int offset, int count) {
+        for (int done = 0; done < count; ) {
+            int n = Math.min(input.length, count - done);
+            processBlock(buffer, offset + done, n);
+            done += n;
+        }
+    }
+
+    private void processBlock(double[] buffer, int offset, int n) {
+        for (int i = 0; i < n; i++) {
+            input[i] = buffer[offset + i] * INPUT_GAIN;
+            reverb[i] = 0;
+        }
+        for (int c = 0; c < combs.length; c += 4) {
+            processCombs(combs[c], combs[c + 1], combs[c + 2], combs[c + 3], n);
+        }
+        for (DelayLine allpass : allpasses) {
+            double[] d = allpass.buffer;
+            int j = allpass.index;
+            for (int i = 0; i < n; ) {
+                int end = Math.min(n, i + d.length - j);
+                for (; i < end; i++, j++) {
+                    double delayed = d[j];
+                    double x = reverb[i];
+                    reverb[i] = delayed - x;
+                    d[j] = x + delayed * ALLPASS_FEEDBACK;
+                }
+                if (j == d.length)
+                    j = 0;
+            }
+            allpass.index = j;
+        }
+        for (int i = 0; i < n; i++) {
+            buffer[offset + i] += wet * reverb[i];
+        }
+    }
+
+    // runs four combs together, adding their outputs to the reverberation: each comb's low-pass filter depends on
+    // its value for the sample before, so running one at a time would leave the processor waiting on each step
+    private void processCombs(Comb c0, Comb c1, Comb c2, Comb c3, int n) {
+        double[] d0 = c0.line.buffer, d1 = c1.line.buffer, d2 = c2.line.buffer, d3 = c3.line.buffer;
+        int j0 = c0.line.index, j1 = c1.line.index, j2 = c2.line.index, j3 = c3.line.index;
+        double f0 = c0.filtered, f1 = c1.filtered, f2 = c2.filtered, f3 = c3.filtered;
+        double feedback = c0.feedback;
+        double damping = c0.damping;
+        for (int i = 0; i < n; ) {
+            // up to where the first of the delay lines wraps round, so the inner loop doesn't have to check
+            int end = Math.min(n, i + Math.min(Math.min(d0.length - j0, d1.length - j1),
+                    Math.min(d2.length - j2, d3.length - j3)));
+            for (; i < end; i++, j0++, j1++, j2++, j3++) {
+                double x = input[i] + DelayLine.TINY;
+                double y0 = d0[j0], y1 = d1[j1], y2 = d2[j2], y3 = d3[j3];
+                reverb[i] += (y0 + y1) + (y2 + y3);
+                f0 = y0 + damping * (f0 - y0);
+                f1 = y1 + damping * (f1 - y1);
+                f2 = y2 + damping * (f2 - y2);
+                f3 = y3 + damping * (f3 - y3);
+                d0[j0] = x + feedback * f0;
+                d1[j1] = x + feedback * f1;
+                d2[j2] = x + feedback * f2;
+                d3[j3] = x + feedback * f3;
+            }
+            if (j0 == d0.length)
+                j0 = 0;
+            if (j1 == d1.length)
+                j1 = 0;
+            if (j2 == d2.length)
+                j2 = 0;
+            if (j3 == d3.length)
+                j3 = 0;
+        }
+        c0.line.index = j0;
+        c1.line.index = j1;
+        c2.line.index = j2;
+        c3.line.index = j3;
+        c0.filtered = f0;
+        c1.filtered = f1;
+        c2.filtered = f2;
+        c3.filtered = f3;
+    }
+
+    /**
+     * A comb filter with a one-pole low-pass filter in its feedback loop.
+     */
+    private static final class Comb {
+
+        Comb(int delay, double feedback, double damping) {
+            line = new DelayLine(delay);
+            this.feedback = feedback;
+            this.damping = damping;
+        }
+
+        final DelayLine line;
+        final double feedback;
+        final double damping;
+        double filtered = 0;
+    }
+
+}
@@ -0,0 +1,26 @@
+package net.bobacus.soundgen.effect;
+
+/**
+ * Saturates the samples smoothly rather than clipping them hard: after multiplying by a drive factor, each sample
+ * goes through a cubic curve, which is linear near zero and levels off at &plusmn;1, where it stays.
+ */
+public final class SoftClip implements Effect {
+
+    /**
+     * @param drive the factor to multiply the samples by first; the more drive, the more distortion
+     */
+    public SoftClip(double drive) {
+        this.drive = drive;
+    }
+
+    private final double drive;
+
+    @Override
+    public void process(double[] buffer, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            double x = Math.max(-1, Math.min(1, buffer[i] * drive));
+            buffer[i] = 1.5 * x - 0.5 * x * x * x;
+        }
+    }
+
+}
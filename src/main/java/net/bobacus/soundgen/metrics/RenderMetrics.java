@@ -0,0 +1,58 @@
+package net.bobacus.soundgen.metrics;
+
+import net.bobacus.soundgen.synth.Sound;
+
+/**
+ * Receives measurements from the render loop.
+ * <p>
+ * Every method does nothing by default. Renderers check {@link #isEnabled()} once, when they are created, and
+ * don't take any measurements at all for {@link #NONE}, so disabled metrics cost nothing in the render loop.
+ * Methods may be called from several rendering threads at once.
+ */
+public interface RenderMetrics {
+
+    RenderMetrics NONE = new RenderMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * @return false if no measurements need to be taken
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * @param channel the index of the channel
+     * @param samples the number of samples rendered
+     * @param nanos   the time taken to render them
+     */
+    default void channelRendered(int channel, int samples, long nanos) {
+    }
+
+    /**
+     * @param sound the note whose first samples are about to be rendered
+     */
+    default void noteStarted(Sound sound) {
+    }
+
+    /**
+     * @param instrument the index of the instrument, or -1 for a Sound not made from the instrument table
+     * @param samples    the number of samples rendered
+     * @param nanos      the time taken to render them
+     * @param cached     true if the samples came from the note cache
+     */
+    default void noteRendered(int instrument, int samples, long nanos, boolean cached) {
+    }
+
+    /**
+     * @param samples the number of samples mixed and converted to PCM
+     * @param nanos   the time taken
+     */
+    default void mixed(int samples, long nanos) {
+    }
+
+}
@@ -0,0 +1,129 @@
+package net.bobacus.soundgen.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.bobacus.soundgen.synth.Sound;
+
+/**
+ * Accumulates render metrics into counters and timers, e.g. for reporting at the end of a render
+ * or for polling by a monitoring system.
+ */
+public class RenderStatistics implements RenderMetrics {
+
+    /**
+     * A count of events, with the samples and time they accounted for.
+     */
+    public static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder samples = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void add(int samples, long nanos) {
+            count.increment();
+            this.samples.add(samples);
+            this.nanos.add(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSamples() {
+            return samples.sum();
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            long n = getNanos();
+            long s = getSamples();
+            return getCount() + " x, " + s + " samples, " + n / 1000000 + " ms"
+                    + (s > 0 ? ", " + n / s + " ns/sample" : "");
+        }
+    }
+
+    private final Map<Integer, Timer> channels = new ConcurrentHashMap<>();
+    private final Map<Integer, Timer> instruments = new ConcurrentHashMap<>();
+    private final Timer cached = new Timer();
+    private final Timer mix = new Timer();
+    private final LongAdder notesStarted = new LongAdder();
+
+    public void channelRendered(int channel, int samples, long nanos) {
+        channels.computeIfAbsent(channel, c -> new Timer()).add(samples, nanos);
+    }
+
+    public void noteStarted(Sound sound) {
+        notesStarted.increment();
+    }
+
+    public void noteRendered(int instrument, int samples, long nanos, boolean cached) {
+        if (cached)
+            this.cached.add(samples, nanos);
+        else
+            instruments.computeIfAbsent(instrument, i -> new Timer()).add(samples, nanos);
+    }
+
+    public void mixed(int samples, long nanos) {
+        mix.add(samples, nanos);
+    }
+
+    /**
+     * @return chunks rendered, by channel index
+     */
+    public Map<Integer, Timer> getChannels() {
+        return new TreeMap<>(channels);
+    }
+
+    /**
+     * @return note segments synthesized (i.e. not from the cache), by instrument index
+     */
+    public Map<Integer, Timer> getInstruments() {
+        return new TreeMap<>(instruments);
+    }
+
+    /**
+     * @return note segments copied from the note cache
+     */
+    public Timer getCached() {
+        return cached;
+    }
+
+    public Timer getMix() {
+        return mix;
+    }
+
+    public long getNotesStarted() {
+        return notesStarted.sum();
+    }
+
+    /**
+     * @return the total number of samples rendered, over all channels
+     */
+    public long getSamplesRendered() {
+        long s = 0;
+        for (Timer t : channels.values())
+            s += t.getSamples();
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("Render statistics:\n");
+        b.append("  samples rendered: ").append(getSamplesRendered()).append('\n');
+        b.append("  notes started: ").append(getNotesStarted()).append('\n');
+        for (Map.Entry<Integer, Timer> e : getChannels().entrySet())
+            b.append("  channel ").append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+        for (Map.Entry<Integer, Timer> e : getInstruments().entrySet())
+            b.append("  instrument ").append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+        b.append("  cached notes: ").append(cached).append('\n');
+        b.append("  mix: ").append(mix);
+        return b.toString();
+    }
+
+}
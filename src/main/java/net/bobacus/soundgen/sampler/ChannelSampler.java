@@ -1,71 +1,234 @@
 package net.bobacus.soundgen.sampler;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
-import net.bobacus.fn.PositionalFunction;
-import net.bobacus.fn.PositionalFunctionIterator;
-import net.bobacus.iterators.IteratorIterator;
+import net.bobacus.iterators.SingleIterator;
 import net.bobacus.soundgen.channel.Channel;
+import net.bobacus.soundgen.metrics.RenderMetrics;
 import net.bobacus.soundgen.synth.Sound;
 import net.bobacus.util.LengthList;
 
+/**
+ * Samples a channel's sequence of Sounds.
+ * <p>
+ * The sampler keeps a cursor (the current sound, and the offset into it) between calls, so that rendering
+ * consecutive chunks doesn't need to search for the starting sound, and writes straight into the caller's
+ * buffer. It is therefore not safe to use from more than one thread at once.
+ * <p>
+ * The buffer may be double or float; internally it is passed around as an Object, and the element type only matters
+ * where samples are written.
+ */
 public class ChannelSampler extends AbstractSampler {
 
     public ChannelSampler(Channel channel, SamplerParams p) {
+        this(channel, p, null);
+    }
+
+    /**
+     * @param channel the channel to sample
+     * @param p       the sampler parameters
+     * @param cache   cache of rendered notes, or null to render every note afresh
+     */
+    public ChannelSampler(Channel channel, SamplerParams p, NoteCache cache) {
+        this(channel, p, cache, RenderMetrics.NONE);
+    }
+
+    /**
+     * @param channel the channel to sample
+     * @param p       the sampler parameters
+     * @param cache   cache of rendered notes, or null to render every note afresh
+     * @param metrics receives note timings
+     */
+    public ChannelSampler(Channel channel, SamplerParams p, NoteCache cache, RenderMetrics metrics) {
         super(p);
-        sounds = channel.getSounds();
-        List<Integer> lengthList = new ArrayList<>(sounds.size());
-        for (Sound s : sounds) {
-            int samples = (int) (s.getDuration() * params.getSampleRate());
-            lengthList.add(samples);
-        }
-        lengths = new LengthList(lengthList);
+        this.cache = cache;
+        this.metrics = metrics;
+        this.timing = metrics.isEnabled();
+        this.channel = channel;
+        soundLengths = new LengthList();
+        lengths = soundLengths.cursor();
+        xInc = 1.0 / params.getSampleRate();
     }
 
-    private final List<Sound> sounds;
+    private final Channel channel;
+    // the lengths of the sounds read from the channel so far
+    private final LengthList soundLengths;
+    private boolean complete = false;
+
+    private final LengthList.Cursor lengths;
+
+    private final NoteCache cache;
+
+    private final RenderMetrics metrics;
+    private final boolean timing;
 
-    private final LengthList lengths;
+    private final double xInc;
+
+    // the cursor's sound index when it is before or after all the sounds
+    private static final int END = Integer.MAX_VALUE;
+
+    // the cursor: the sample position it refers to, the index of the sound there, and the offset into that sound
+    private int cursorPosition = 0;
+    private int cursorSound = 0;
+    private int cursorOffset = 0;
+    // the cached rendering of the cursor's sound (a double[] or float[]), if it has been looked up
+    private Object cursorNote;
+    private int cursorNoteLength;
+    private boolean cursorNoteFetched = false;
+    // true if the cursor's sound was rendered into the cache when it was looked up, and its time already reported
+    private boolean cursorNoteRendered = false;
 
     public Iterator<SampleChunk> getSamples(int duration, int start) {
-        System.out.println("Channel.Sampler.getSamples(duration=" + duration + ",start=" + start + ")");
         assert duration > 0;
+        double[] b = new double[duration];
+        getSamples(b, 0, duration, start);
+        return SingleIterator.create(new SampleChunk(b));
+    }
+
+    @Override
+    public void getSamples(double[] buffer, int offset, int duration, int start) {
+        fill(buffer, offset, duration, start);
+    }
+
+    @Override
+    public void getSamples(float[] buffer, int offset, int duration, int start) {
+        fill(buffer, offset, duration, start);
+    }
+
+    private void fill(Object buffer, int offset, int duration, int start) {
+        if (start != cursorPosition)
+            seek(start);
+
+        int written = 0;
+        while (written < duration && cursorSound != END && hasSound(cursorSound)) {
+            int length = soundLengths.getLength(cursorSound);
+            int n = Math.min(length - cursorOffset, duration - written);
+            if (n > 0) {
+                render(buffer, offset + written, n);
+                written += n;
+                cursorOffset += n;
+            }
+            if (cursorOffset >= length)
+                moveTo(cursorSound + 1, 0);
+        }
+        zero(buffer, offset + written, offset + duration);
+        cursorPosition = start + duration;
+    }
+
+    /**
+     * @return the number of samples in the channel, or -1 if the sampler hasn't yet reached the channel's end
+     */
+    @Override
+    public int getLength() {
+        return (complete ? (int) soundLengths.getTotalLength() : -1);
+    }
 
-        // which sound do we start with?
-        int startSound = lengths.getIndexForPosition(start);
-        // where in that sound do we start?
-        final int startOffset = lengths.getOffsetForPosition(start);
-        // which sound do we finish with? (inclusively)
-        int endSound = lengths.getIndexForPosition(start + duration - 1);
-        // how much of that sound do we play? (what is the exclusive offset of ending)
-        final int endOffset = lengths.getOffsetForPosition(start + duration - 1);
+    @Override
+    public double getPan() {
+        return channel.getPan();
+    }
 
-        // First, get an Iterator for the sub-list of Sounds we're using (actually a ListIterator so we can identify first element)
-        Iterator<Sound> soundsToUse = sounds.subList(startSound, endSound + 1).iterator();
+    @Override
+    public double getGain() {
+        return channel.getGain();
+    }
 
-        // Given an Iterator<Sound>, construct an Iterator<SampleChunk>
+    private void seek(int position) {
+        // read far enough into the channel to find the position
+        boolean more = true;
+        while (more && position >= soundLengths.getTotalLength())
+            more = hasSound(soundLengths.size());
+        int index = lengths.getIndexForPosition(position);
+        int offset = lengths.getOffsetForPosition(position);
+        if (index < 0 || position < 0)
+            moveTo(END, 0);
+        else if (offset >= soundLengths.getLength(index))
+            // past the end of the final sound
+            moveTo(END, 0);
+        else
+            moveTo(index, offset);
+        cursorPosition = position;
+    }
 
-        System.out.println("startSound = " + startSound + ", endSound = " + endSound + ", startOffset = "
-                + startOffset + ", endOffset = " + endOffset);
+    // reads sounds from the channel up to the given index, returning false if the channel ends before it
+    private boolean hasSound(int index) {
+        while (soundLengths.size() <= index) {
+            Sound sound = channel.getSound(soundLengths.size());
+            if (sound == null) {
+                complete = true;
+                return false;
+            }
+            soundLengths.add((int) (sound.getDuration() * params.getSampleRate()));
+        }
+        return true;
+    }
 
-        // Define a PositionalFunction that returns an Iterator<SampleChunk> from a Sound + position
-        PositionalFunction<Sound, Iterator<SampleChunk>> fn = (sound, pos) -> {
-            System.out.println("Playing sound " + pos.getIndex());
-            Sampler sampler = new SoundSampler(sound, params);
-            int soundStart = (pos.isFirst() ? startOffset : 0);
-            int soundEnd = (pos.isLast() ? endOffset : (int) (params.getSampleRate() * sound.getDuration()));
-            int soundDuration = soundEnd - soundStart;
-            // we get an Iterator<SampleChunk> whose elements need to be obtained and returned
-            return sampler.getSamples(soundDuration, soundStart);
-        };
+    private void moveTo(int sound, int offset) {
+        if (sound != cursorSound) {
+            cursorNote = null;
+            cursorNoteFetched = false;
+        }
+        cursorSound = sound;
+        cursorOffset = offset;
+    }
 
-        // Create a PositionalFunctionIterator to run the above function
-        Iterator<Iterator<SampleChunk>> sampleChunkGenerator = PositionalFunctionIterator.create(soundsToUse, fn);
+    // renders n samples of the cursor's sound from the cursor's offset
+    private void render(Object buffer, int offset, int n) {
+        Sound sound = channel.getSound(cursorSound);
+        boolean single = buffer instanceof float[];
+        if (!cursorNoteFetched || cursorNote != null && single != cursorNote instanceof float[]) {
+            if (timing && cursorOffset == 0 && !cursorNoteFetched)
+                metrics.noteStarted(sound);
+            cursorNoteRendered = false;
+            if (cache == null) {
+                cursorNote = null;
+            } else {
+                // on a cache miss, report the time taken to render the whole note here, and not the copies out of it
+                boolean miss = timing && !cache.contains(sound, params, single);
+                long t = (miss ? System.nanoTime() : 0);
+                if (single) {
+                    float[] note = cache.getFloatSamples(sound, params);
+                    cursorNote = note;
+                    cursorNoteLength = (note == null ? 0 : note.length);
+                } else {
+                    double[] note = cache.getSamples(sound, params);
+                    cursorNote = note;
+                    cursorNoteLength = (note == null ? 0 : note.length);
+                }
+                if (miss && cursorNote != null) {
+                    metrics.noteRendered(sound.getInstrument(), cursorNoteLength, System.nanoTime() - t, false);
+                    cursorNoteRendered = true;
+                }
+            }
+            cursorNoteFetched = true;
+        }
+        if (timing && !cursorNoteRendered) {
+            long t = System.nanoTime();
+            renderNote(sound, buffer, offset, n);
+            metrics.noteRendered(sound.getInstrument(), n, System.nanoTime() - t, cursorNote != null);
+        } else {
+            renderNote(sound, buffer, offset, n);
+        }
+    }
 
-        // And an IteratorIterator to get those SampleChunks out
+    private void renderNote(Sound sound, Object buffer, int offset, int n) {
+        if (cursorNote != null) {
+            int m = Math.max(0, Math.min(n, cursorNoteLength - cursorOffset));
+            System.arraycopy(cursorNote, cursorOffset, buffer, offset, m);
+            zero(buffer, offset + m, offset + n);
+        } else if (buffer instanceof float[]) {
+            sound.getValues((float[]) buffer, offset, n, cursorOffset / (double) params.getSampleRate(), xInc);
+        } else {
+            sound.getValues((double[]) buffer, offset, n, cursorOffset / (double) params.getSampleRate(), xInc);
+        }
+    }
 
-        return new IteratorIterator<>(sampleChunkGenerator);
+    private static void zero(Object buffer, int from, int to) {
+        if (buffer instanceof float[])
+            Arrays.fill((float[]) buffer, from, to, 0);
+        else
+            Arrays.fill((double[]) buffer, from, to, 0);
     }
 
 }
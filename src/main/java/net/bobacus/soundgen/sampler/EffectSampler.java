@@ -0,0 +1,77 @@
+package net.bobacus.soundgen.sampler;
+
+import java.util.Iterator;
+
+import net.bobacus.iterators.SingleIterator;
+import net.bobacus.soundgen.effect.EffectChain;
+
+/**
+ * Runs another sampler's output through a chain of effects, e.g. for a channel's own reverb. The effects run on the
+ * thread rendering the channel, straight after it, on the same block.
+ * <p>
+ * As the effects have state, blocks must be asked for in order, each starting where the last one ended. The
+ * sampler's length includes a tail after the other sampler's end, so that echoes and reverberation die away rather
+ * than being cut off.
+ */
+public class EffectSampler implements Sampler {
+
+    /**
+     * @param sampler the sampler to process the output of
+     * @param effects the effects, which only this sampler may use
+     */
+    public EffectSampler(Sampler sampler, EffectChain effects) {
+        this(sampler, effects, effects.getTailLength());
+    }
+
+    /**
+     * @param sampler    the sampler to process the output of
+     * @param effects    the effects, which only this sampler may use
+     * @param tailLength the number of samples to go on for after the end of the sampler, at least the effects' tail
+     *                   length
+     */
+    public EffectSampler(Sampler sampler, EffectChain effects, int tailLength) {
+        this.sampler = sampler;
+        this.effects = effects;
+        this.tailLength = tailLength;
+    }
+
+    private final Sampler sampler;
+    private final EffectChain effects;
+    private final int tailLength;
+
+    @Override
+    public Iterator<SampleChunk> getSamples(int duration, int start) {
+        double[] samples = new double[duration];
+        getSamples(samples, 0, duration, start);
+        return SingleIterator.create(new SampleChunk(samples));
+    }
+
+    @Override
+    public void getSamples(double[] buffer, int offset, int duration, int start) {
+        sampler.getSamples(buffer, offset, duration, start);
+        effects.process(buffer, offset, duration);
+    }
+
+    @Override
+    public void getSamples(float[] buffer, int offset, int duration, int start) {
+        sampler.getSamples(buffer, offset, duration, start);
+        effects.process(buffer, offset, duration);
+    }
+
+    @Override
+    public int getLength() {
+        int length = sampler.getLength();
+        return (length >= 0 ? length + tailLength : -1);
+    }
+
+    @Override
+    public double getPan() {
+        return sampler.getPan();
+    }
+
+    @Override
+    public double getGain() {
+        return sampler.getGain();
+    }
+
+}
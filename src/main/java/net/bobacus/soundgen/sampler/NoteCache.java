@@ -0,0 +1,189 @@
+package net.bobacus.soundgen.sampler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.bobacus.soundgen.synth.Sound;
+
+/**
+ * A least-recently-used cache of whole rendered notes, keyed by instrument, pitch, duration, sample rate and
+ * precision, and bounded by the total size of the renderings (so single precision notes take half the space).
+ * <p>
+ * Only Sounds made from an instrument in the instrument table, and whose synths are deterministic, are cached;
+ * others (e.g. the noise generators) are counted as bypasses and rendered afresh each time.
+ * May be shared between threads.
+ */
+public class NoteCache {
+
+    /**
+     * @param maxBytes the maximum total size of the cached renderings
+     */
+    public NoteCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    private final long maxBytes;
+
+    // double[] or float[] renderings
+    private final LinkedHashMap<Key, Object> notes = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long bypasses = 0;
+
+    /**
+     * @param sound  the note
+     * @param params the sampler parameters
+     * @return the whole note rendered at the sampler's sample rate, which must not be modified,
+     * or null if the note can't be cached
+     */
+    double[] getSamples(Sound sound, SamplerParams params) {
+        return (double[]) getNote(sound, params, false);
+    }
+
+    /**
+     * @param sound  the note
+     * @param params the sampler parameters
+     * @return the whole note rendered in single precision at the sampler's sample rate, which must not be modified,
+     * or null if the note can't be cached
+     */
+    float[] getFloatSamples(Sound sound, SamplerParams params) {
+        return (float[]) getNote(sound, params, true);
+    }
+
+    /**
+     * Doesn't count as a hit or a miss.
+     *
+     * @param sound  the note
+     * @param params the sampler parameters
+     * @param single true for the single precision rendering
+     * @return true if the note's rendering is in the cache
+     */
+    synchronized boolean contains(Sound sound, SamplerParams params, boolean single) {
+        return notes.containsKey(new Key(sound.getInstrument(), sound.getFrequency(), sound.getDuration(),
+                params.getSampleRate(), single));
+    }
+
+    private Object getNote(Sound sound, SamplerParams params, boolean single) {
+        if (sound.getInstrument() < 0 || !sound.isDeterministic()) {
+            synchronized (this) {
+                bypasses++;
+            }
+            return null;
+        }
+        Key key = new Key(sound.getInstrument(), sound.getFrequency(), sound.getDuration(), params.getSampleRate(),
+                single);
+        synchronized (this) {
+            Object samples = notes.get(key);
+            if (samples != null) {
+                hits++;
+                return samples;
+            }
+            misses++;
+        }
+        // render outside the lock; if another thread renders the same note meanwhile, the last one in wins
+        int length = (int) (sound.getDuration() * params.getSampleRate());
+        double step = 1.0 / params.getSampleRate();
+        Object samples;
+        if (single) {
+            float[] b = new float[length];
+            sound.getValues(b, 0, length, 0, step);
+            samples = b;
+        } else {
+            double[] b = new double[length];
+            sound.getValues(b, 0, length, 0, step);
+            samples = b;
+        }
+        put(key, samples);
+        return samples;
+    }
+
+    private static long getSize(Object samples) {
+        return (samples instanceof float[] ? 4L * ((float[]) samples).length : 8L * ((double[]) samples).length);
+    }
+
+    private synchronized void put(Key key, Object samples) {
+        long size = getSize(samples);
+        if (size > maxBytes)
+            return;
+        Object old = notes.put(key, samples);
+        if (old != null)
+            bytes -= getSize(old);
+        bytes += size;
+        for (Iterator<Object> i = notes.values().iterator(); bytes > maxBytes && i.hasNext(); ) {
+            bytes -= getSize(i.next());
+            i.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of notes which couldn't be cached
+     */
+    public synchronized long getBypasses() {
+        return bypasses;
+    }
+
+    /**
+     * @return the total size of the cached renderings, in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "NoteCache: " + notes.size() + " notes, " + bytes + " bytes, " + hits + " hits, " + misses + " misses, "
+                + evictions + " evictions, " + bypasses + " bypasses";
+    }
+
+    private static final class Key {
+        Key(int instrument, double frequency, double duration, int sampleRate, boolean single) {
+            this.instrument = instrument;
+            this.frequency = frequency;
+            this.duration = duration;
+            this.sampleRate = sampleRate;
+            this.single = single;
+        }
+
+        private final int instrument;
+        private final double frequency;
+        private final double duration;
+        private final int sampleRate;
+        private final boolean single;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return instrument == k.instrument && Double.compare(frequency, k.frequency) == 0
+                    && Double.compare(duration, k.duration) == 0 && sampleRate == k.sampleRate && single == k.single;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = instrument;
+            h = 31 * h + Double.hashCode(frequency);
+            h = 31 * h + Double.hashCode(duration);
+            h = 31 * h + sampleRate;
+            return 31 * h + (single ? 1 : 0);
+        }
+    }
+
+}
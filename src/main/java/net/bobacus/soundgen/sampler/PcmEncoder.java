@@ -0,0 +1,174 @@
+package net.bobacus.soundgen.sampler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts blocks of samples to PCM data in the format given by {@link SamplerParams}: 8, 16, 24 or 32 bit integers,
+ * or 32 bit floats, little-endian, with the channels interleaved. 8 bit samples are unsigned, and the others
+ * signed, as in WAV files.
+ * <p>
+ * Samples are scaled by a gain and then clipped to [-1, 1], so a loud mix saturates rather than wrapping around.
+ * Integer samples are rounded to the nearest level, optionally after adding triangular (TPDF) dither of +/-1 level.
+ * The dither is pseudo-random from a fixed seed, so the same input always gives the same output.
+ * Not thread-safe, because of the dither state.
+ */
+public final class PcmEncoder {
+
+    /**
+     * @param params the sampler parameters, giving the sample format and number of channels
+     * @param dither true to add TPDF dither to integer samples of 24 bits or fewer
+     */
+    public PcmEncoder(SamplerParams params, boolean dither) {
+        int bits = params.getBits();
+        if (params.isFloatEncoding() ? bits != 32 : bits != 8 && bits != 16 && bits != 24 && bits != 32)
+            throw new IllegalArgumentException("Unsupported sample format: " + bits + " bits"
+                    + (params.isFloatEncoding() ? " float" : ""));
+        floatEncoding = params.isFloatEncoding();
+        sampleSize = bits / 8;
+        channels = params.getChannels();
+        scale = (floatEncoding ? 1 : (1L << (bits - 1)) - 1);
+        this.dither = dither && !floatEncoding && bits <= 24;
+    }
+
+    private final boolean floatEncoding;
+    private final int sampleSize;
+    private final int channels;
+    // the largest integer level
+    private final double scale;
+    private final boolean dither;
+
+    private long seed = 0x9E3779B97F4A7C15L;
+
+    /**
+     * @return the number of output channels
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @return the number of bytes in a frame, i.e. one sample for each channel
+     */
+    public int getFrameSize() {
+        return sampleSize * channels;
+    }
+
+    /**
+     * Encodes one channel of a block of frames, leaving the other channels' bytes in the frames untouched.
+     *
+     * @param samples    the samples
+     * @param offset     index of the first sample
+     * @param count      number of samples (frames) to encode
+     * @param gain       factor to multiply the samples by before clipping
+     * @param channel    the output channel, from 0
+     * @param data       where to write the frames
+     * @param dataOffset index in data of the first frame
+     */
+    public void encode(double[] samples, int offset, int count, double gain, int channel, byte[] data,
+                       int dataOffset) {
+        int frameSize = getFrameSize();
+        int p = dataOffset + channel * sampleSize;
+        for (int i = 0; i < count; i++) {
+            put(samples[offset + i] * gain, data, p);
+            p += frameSize;
+        }
+    }
+
+    /**
+     * Single precision version of {@link #encode(double[], int, int, double, int, byte[], int)}.
+     */
+    public void encode(float[] samples, int offset, int count, double gain, int channel, byte[] data,
+                       int dataOffset) {
+        int frameSize = getFrameSize();
+        int p = dataOffset + channel * sampleSize;
+        for (int i = 0; i < count; i++) {
+            put(samples[offset + i] * gain, data, p);
+            p += frameSize;
+        }
+    }
+
+    /**
+     * Encodes a block of frames, interleaving the channels.
+     *
+     * @param samples    the samples of each channel; there must be one array for each output channel
+     * @param offset     index of the first sample in each array
+     * @param count      number of frames to encode
+     * @param gain       factor to multiply the samples by before clipping
+     * @param data       where to write the frames
+     * @param dataOffset index in data of the first frame
+     */
+    public void encode(double[][] samples, int offset, int count, double gain, byte[] data, int dataOffset) {
+        for (int c = 0; c < channels; c++) {
+            encode(samples[c], offset, count, gain, c, data, dataOffset);
+        }
+    }
+
+    /**
+     * Single precision version of {@link #encode(double[][], int, int, double, byte[], int)}.
+     */
+    public void encode(float[][] samples, int offset, int count, double gain, byte[] data, int dataOffset) {
+        for (int c = 0; c < channels; c++) {
+            encode(samples[c], offset, count, gain, c, data, dataOffset);
+        }
+    }
+
+    /**
+     * Encodes a block of frames, interleaving the channels, at the buffer's position, which is then advanced past
+     * them. The buffer must be backed by an array.
+     */
+    public void encode(double[][] samples, int offset, int count, double gain, ByteBuffer out) {
+        int n = count * getFrameSize();
+        encode(samples, offset, count, gain, out.array(), out.arrayOffset() + out.position());
+        out.position(out.position() + n);
+    }
+
+    /**
+     * Single precision version of {@link #encode(double[][], int, int, double, ByteBuffer)}.
+     */
+    public void encode(float[][] samples, int offset, int count, double gain, ByteBuffer out) {
+        int n = count * getFrameSize();
+        encode(samples, offset, count, gain, out.array(), out.arrayOffset() + out.position());
+        out.position(out.position() + n);
+    }
+
+    private void put(double v, byte[] data, int p) {
+        if (v > 1)
+            v = 1;
+        else if (v < -1)
+            v = -1;
+        if (floatEncoding) {
+            putInt(Float.floatToRawIntBits((float) v), 4, data, p);
+            return;
+        }
+        double x = v * scale;
+        if (dither) {
+            x += nextUniform() - nextUniform();
+            if (x > scale)
+                x = scale;
+            else if (x < -scale)
+                x = -scale;
+        }
+        long level = Math.round(x);
+        if (sampleSize == 1)
+            data[p] = (byte) (level + 128);
+        else
+            putInt((int) level, sampleSize, data, p);
+    }
+
+    private static void putInt(int value, int bytes, byte[] data, int p) {
+        for (int b = 0; b < bytes; b++) {
+            data[p + b] = (byte) (value >> (8 * b));
+        }
+    }
+
+    // xorshift64*, giving a value in [0, 1)
+    private double nextUniform() {
+        long x = seed;
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        seed = x;
+        return ((x * 0x2545F4914F6CDD1DL) >>> 11) * 0x1.0p-53;
+    }
+
+}
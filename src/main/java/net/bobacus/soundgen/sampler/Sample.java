@@ -1,18 +1,21 @@
 package net.bobacus.soundgen.sampler;
 
 /**
- * Methods to return little and big bytes of value converted to 16 bits signed
+ * Methods to return little and big bytes of value converted to 16 bits signed, clipping it to [-1, 1].
+ * For whole blocks, and other formats, see {@link PcmEncoder}.
  */
 public class Sample {
 
     public static byte getBigByte(double value) {
-        int i = (int) (32767 * value);
-        return (byte) (i >> 8);
+        return (byte) (toShort(value) >> 8);
     }
 
     public static byte getLittleByte(double value) {
-        int i = (int) (32767 * value);
-        return (byte) (i & 0xFF);
+        return (byte) (toShort(value) & 0xFF);
+    }
+
+    private static int toShort(double value) {
+        return (int) (32767 * Math.max(-1, Math.min(1, value)));
     }
 
 }
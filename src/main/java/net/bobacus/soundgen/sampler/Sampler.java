@@ -1,5 +1,6 @@
 package net.bobacus.soundgen.sampler;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 
@@ -11,4 +12,57 @@ public interface Sampler {
      */
     Iterator<SampleChunk> getSamples(int duration, int start);
 
+    /**
+     * Renders samples straight into a buffer. Any samples the sampler doesn't provide are set to zero.
+     *
+     * @param buffer   the buffer to fill
+     * @param offset   index in the buffer of the first sample
+     * @param duration number of samples to get, >0
+     * @param start    sample to start with
+     */
+    default void getSamples(double[] buffer, int offset, int duration, int start) {
+        Iterator<SampleChunk> chunks = getSamples(duration, start);
+        int i = 0;
+        while (chunks.hasNext() && i < duration) {
+            double[] ss = chunks.next().getSamples();
+            int n = Math.min(ss.length, duration - i);
+            System.arraycopy(ss, 0, buffer, offset + i, n);
+            i += n;
+        }
+        Arrays.fill(buffer, offset + i, offset + duration, 0);
+    }
+
+    /**
+     * Single precision version of {@link #getSamples(double[], int, int, int)}. By default, the samples are rendered
+     * in double precision and narrowed.
+     */
+    default void getSamples(float[] buffer, int offset, int duration, int start) {
+        double[] b = new double[duration];
+        getSamples(b, 0, duration, start);
+        for (int i = 0; i < duration; i++) {
+            buffer[offset + i] = (float) b[i];
+        }
+    }
+
+    /**
+     * @return the number of samples the sampler provides, or -1 if that isn't known (yet)
+     */
+    default int getLength() {
+        return -1;
+    }
+
+    /**
+     * @return where the sampler's output is placed between the output channels, from -1 (left) to 1 (right)
+     */
+    default double getPan() {
+        return 0;
+    }
+
+    /**
+     * @return the factor the sampler's output is multiplied by in the mix
+     */
+    default double getGain() {
+        return 1;
+    }
+
 }
@@ -6,18 +6,43 @@ package net.bobacus.soundgen.sampler;
 public final class SamplerParams {
     /**
      * @param sampleRate the sample rate, in samples per second
-     * @param bits the resolution of the samples, either 8 or 16 bits
+     * @param bits the resolution of the samples: 8, 16, 24 or 32 bits
      * @param channels the number of output channels (1 for mono)
      */
     public SamplerParams(int sampleRate, int bits, int channels) {
+        this(sampleRate, bits, channels, false);
+    }
+
+    /**
+     * @param sampleRate the sample rate, in samples per second
+     * @param bits the resolution of the samples: 8, 16, 24 or 32 bits
+     * @param channels the number of output channels (1 for mono)
+     * @param singlePrecision true to render and mix in float buffers rather than double
+     */
+    public SamplerParams(int sampleRate, int bits, int channels, boolean singlePrecision) {
+        this(sampleRate, bits, channels, singlePrecision, false);
+    }
+
+    /**
+     * @param sampleRate the sample rate, in samples per second
+     * @param bits the resolution of the samples: 8, 16, 24 or 32 bits
+     * @param channels the number of output channels (1 for mono)
+     * @param singlePrecision true to render and mix in float buffers rather than double
+     * @param floatEncoding true to output 32 bit float samples rather than integers
+     */
+    public SamplerParams(int sampleRate, int bits, int channels, boolean singlePrecision, boolean floatEncoding) {
         this.sampleRate = sampleRate;
         this.bits = bits;
         this.channels = channels;
+        this.singlePrecision = singlePrecision;
+        this.floatEncoding = floatEncoding;
     }
 
     private final int sampleRate;
     private final int bits;
     private final int channels;
+    private final boolean singlePrecision;
+    private final boolean floatEncoding;
 
     public int getSampleRate() {
         return sampleRate;
@@ -31,4 +56,26 @@ public final class SamplerParams {
         return channels;
     }
 
+    /**
+     * @return true if samples are rendered and mixed in float buffers, so that only the synths' positions are
+     * computed in double precision
+     */
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * @return true if the output samples are floats (of 32 bits), rather than integers
+     */
+    public boolean isFloatEncoding() {
+        return floatEncoding;
+    }
+
+    /**
+     * @return the number of bytes in a frame of output, i.e. one sample for each channel
+     */
+    public int getFrameSize() {
+        return channels * ((bits + 7) / 8);
+    }
+
 }
@@ -1,5 +1,6 @@
 package net.bobacus.soundgen.sampler;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import net.bobacus.iterators.EmptyIterator;
@@ -21,4 +22,27 @@ public class SoundSampler extends SynthSampler {
         return super.getSamples(d, start);
     }
 
+    @Override
+    public void getSamples(double[] buffer, int offset, int duration, int start) {
+        int maxDuration = Math.max(0, (int) (sound.getDuration() * params.getSampleRate()) - start);
+        int d = duration <= maxDuration ? duration : maxDuration;
+        if (d > 0)
+            super.getSamples(buffer, offset, d, start);
+        Arrays.fill(buffer, offset + d, offset + duration, 0);
+    }
+
+    @Override
+    public void getSamples(float[] buffer, int offset, int duration, int start) {
+        int maxDuration = Math.max(0, (int) (sound.getDuration() * params.getSampleRate()) - start);
+        int d = duration <= maxDuration ? duration : maxDuration;
+        if (d > 0)
+            super.getSamples(buffer, offset, d, start);
+        Arrays.fill(buffer, offset + d, offset + duration, 0);
+    }
+
+    @Override
+    public int getLength() {
+        return (int) (sound.getDuration() * params.getSampleRate());
+    }
+
 }
@@ -19,12 +19,20 @@ public class SynthSampler extends AbstractSampler {
     @Override
     public Iterator<SampleChunk> getSamples(int duration, int start) {
         double[] b = new double[duration];
-        double x = start / (double) params.getSampleRate();
-        for (int i = 0; i < duration; i++) {
-            b[i] = synth.getValue(x);
-            x += xInc;
-        }
+        getSamples(b, 0, duration, start);
         return SingleIterator.create(new SampleChunk(b));
     }
 
+    @Override
+    public void getSamples(double[] buffer, int offset, int duration, int start) {
+        double x = start / (double) params.getSampleRate();
+        synth.getValues(buffer, offset, duration, x, xInc);
+    }
+
+    @Override
+    public void getSamples(float[] buffer, int offset, int duration, int start) {
+        double x = start / (double) params.getSampleRate();
+        synth.getValues(buffer, offset, duration, x, xInc);
+    }
+
 }
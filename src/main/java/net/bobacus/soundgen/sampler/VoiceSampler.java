@@ -0,0 +1,313 @@
+package net.bobacus.soundgen.sampler;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import net.bobacus.iterators.SingleIterator;
+import net.bobacus.soundgen.channel.EventChannel;
+import net.bobacus.soundgen.channel.NoteEvent;
+import net.bobacus.soundgen.metrics.RenderMetrics;
+import net.bobacus.soundgen.synth.Sound;
+
+/**
+ * Samples a channel of note events, which may overlap, using a fixed pool of voices.
+ * <p>
+ * Each event starts a voice at the exact sample of its start time, even part way through a block, and the voice plays
+ * until the end of its sound. When every voice is busy, the oldest is stolen for the new event. The voices are summed
+ * as they are, so a note is as loud as it would be in a channel of its own, whatever the size of the pool; a tune
+ * leaves headroom for its chords with the channel's gain in the mix. Rendering costs in proportion to the number of
+ * voices that are sounding.
+ * <p>
+ * Like {@link ChannelSampler}, this keeps its place between calls, and is not safe to use from more than one thread at
+ * once. Seeking backwards replays the voice allocation from the start of the channel, so that the voices which are
+ * sounding (and stolen) at any position are the same however it was reached.
+ * <p>
+ * As in {@link ChannelSampler}, the buffer may be double or float, and is passed around as an Object.
+ */
+public class VoiceSampler extends AbstractSampler {
+
+    /**
+     * @param channel the channel to sample
+     * @param p       the sampler parameters
+     * @param voices  the number of voices, at least 1
+     */
+    public VoiceSampler(EventChannel channel, SamplerParams p, int voices) {
+        this(channel, p, voices, null, RenderMetrics.NONE);
+    }
+
+    /**
+     * @param channel the channel to sample
+     * @param p       the sampler parameters
+     * @param voices  the number of voices, at least 1
+     * @param cache   cache of rendered notes, or null to render every note afresh
+     * @param metrics receives note timings
+     */
+    public VoiceSampler(EventChannel channel, SamplerParams p, int voices, NoteCache cache, RenderMetrics metrics) {
+        super(p);
+        if (voices < 1)
+            throw new IllegalArgumentException("voices must be at least 1");
+        this.channel = channel;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.timing = metrics.isEnabled();
+        this.voices = new Voice[voices];
+        for (int i = 0; i < voices; i++) {
+            this.voices[i] = new Voice();
+        }
+        xInc = 1.0 / params.getSampleRate();
+    }
+
+    private final EventChannel channel;
+    private final NoteCache cache;
+    private final RenderMetrics metrics;
+    private final boolean timing;
+    private final Voice[] voices;
+    private final double xInc;
+
+    // the sample position the sampler has rendered up to, and the index of the next event to start
+    private int position = 0;
+    private int nextEvent = 0;
+    private int nextEventStart = -1;
+    private int lastEventStart = 0;
+
+    // the end of the latest sound so far, and whether all the events have been read
+    private int end = 0;
+    private boolean complete = false;
+
+    // voices are rendered here before being added to the output
+    private double[] work = new double[0];
+    private float[] floatWork = new float[0];
+
+    private int stolen = 0;
+
+    public Iterator<SampleChunk> getSamples(int duration, int start) {
+        assert duration > 0;
+        double[] b = new double[duration];
+        getSamples(b, 0, duration, start);
+        return SingleIterator.create(new SampleChunk(b));
+    }
+
+    @Override
+    public void getSamples(double[] buffer, int offset, int duration, int start) {
+        Arrays.fill(buffer, offset, offset + duration, 0);
+        fill(buffer, offset, duration, start);
+    }
+
+    @Override
+    public void getSamples(float[] buffer, int offset, int duration, int start) {
+        Arrays.fill(buffer, offset, offset + duration, 0);
+        fill(buffer, offset, duration, start);
+    }
+
+    // adds the voices into a zeroed buffer
+    private void fill(Object buffer, int offset, int duration, int start) {
+        if (start != position)
+            seek(start);
+
+        int blockEnd = start + duration;
+        int p = start;
+        while (p < blockEnd) {
+            // start the events which are due, then render up to the next one
+            while (peekEvent() && nextEventStart <= p)
+                startEvent();
+            int q = (peekEvent() && nextEventStart < blockEnd ? nextEventStart : blockEnd);
+            for (Voice v : voices) {
+                if (v.sound != null)
+                    render(v, buffer, offset + p - start, p, q);
+            }
+            p = q;
+        }
+        position = blockEnd;
+    }
+
+    /**
+     * @return the number of samples in the channel, or -1 if the sampler hasn't yet read all its events
+     */
+    @Override
+    public int getLength() {
+        return (complete ? end : -1);
+    }
+
+    @Override
+    public double getPan() {
+        return channel.getPan();
+    }
+
+    @Override
+    public double getGain() {
+        return channel.getGain();
+    }
+
+    /**
+     * @return the number of voices that have been stolen for new events
+     */
+    public int getStolenVoices() {
+        return stolen;
+    }
+
+    private void seek(int target) {
+        if (target < position) {
+            for (Voice v : voices) {
+                v.sound = null;
+            }
+            nextEvent = 0;
+            nextEventStart = -1;
+            lastEventStart = 0;
+            stolen = 0;
+        }
+        // allocate voices for the events before the target, without rendering them
+        while (peekEvent() && nextEventStart < target)
+            startEvent();
+        for (Voice v : voices) {
+            if (v.sound != null && v.end <= target)
+                v.sound = null;
+        }
+        position = target;
+    }
+
+    // reads the next event's start position, returning false if there are no more events
+    private boolean peekEvent() {
+        if (nextEventStart >= 0)
+            return true;
+        NoteEvent e = channel.getEvent(nextEvent);
+        if (e == null) {
+            complete = true;
+            return false;
+        }
+        nextEventStart = (int) Math.round(e.getStart() * params.getSampleRate());
+        if (nextEventStart < lastEventStart)
+            throw new IllegalArgumentException("Events must be in order of start time, but event " + nextEvent
+                    + " starts at " + e.getStart());
+        return true;
+    }
+
+    private void startEvent() {
+        Sound sound = channel.getEvent(nextEvent).getSound();
+        int start = nextEventStart;
+        Voice voice = null;
+        Voice oldest = null;
+        for (Voice v : voices) {
+            if (v.sound != null && v.end <= start)
+                v.sound = null;
+            if (v.sound == null) {
+                if (voice == null)
+                    voice = v;
+            } else if (oldest == null || v.start < oldest.start) {
+                oldest = v;
+            }
+        }
+        if (voice == null) {
+            voice = oldest;
+            stolen++;
+        }
+        voice.sound = sound;
+        voice.start = start;
+        voice.end = start + (int) (sound.getDuration() * params.getSampleRate());
+        voice.note = null;
+        voice.noteLength = 0;
+        voice.noteFetched = false;
+        voice.noteRendered = false;
+        end = Math.max(end, voice.end);
+        lastEventStart = start;
+        nextEvent++;
+        nextEventStart = -1;
+    }
+
+    // adds the voice's samples for positions from to to (exclusive) into the buffer, starting at offset
+    private void render(Voice v, Object buffer, int offset, int from, int to) {
+        int a = Math.max(from, v.start);
+        int b = Math.min(to, v.end);
+        if (b > a) {
+            boolean single = buffer instanceof float[];
+            if (!v.noteFetched || v.note != null && single != v.note instanceof float[]) {
+                if (timing && a == v.start && !v.noteFetched)
+                    metrics.noteStarted(v.sound);
+                v.noteRendered = false;
+                if (cache == null) {
+                    v.note = null;
+                } else {
+                    // on a cache miss, report the time taken to render the whole note here, and not the copies out
+                    // of it
+                    boolean miss = timing && !cache.contains(v.sound, params, single);
+                    long t = (miss ? System.nanoTime() : 0);
+                    if (single) {
+                        float[] note = cache.getFloatSamples(v.sound, params);
+                        v.note = note;
+                        v.noteLength = (note == null ? 0 : note.length);
+                    } else {
+                        double[] note = cache.getSamples(v.sound, params);
+                        v.note = note;
+                        v.noteLength = (note == null ? 0 : note.length);
+                    }
+                    if (miss && v.note != null) {
+                        metrics.noteRendered(v.sound.getInstrument(), v.noteLength, System.nanoTime() - t, false);
+                        v.noteRendered = true;
+                    }
+                }
+                v.noteFetched = true;
+            }
+            if (timing && !v.noteRendered) {
+                long t = System.nanoTime();
+                renderVoice(v, buffer, offset + a - from, a - v.start, b - a);
+                metrics.noteRendered(v.sound.getInstrument(), b - a, System.nanoTime() - t, v.note != null);
+            } else {
+                renderVoice(v, buffer, offset + a - from, a - v.start, b - a);
+            }
+        }
+        if (v.end <= to)
+            v.sound = null;
+    }
+
+    private void renderVoice(Voice v, Object buffer, int offset, int noteOffset, int n) {
+        double position = noteOffset / (double) params.getSampleRate();
+        if (buffer instanceof float[]) {
+            float[] out = (float[]) buffer;
+            float[] in;
+            if (v.note != null) {
+                in = (float[]) v.note;
+                n = Math.max(0, Math.min(n, v.noteLength - noteOffset));
+            } else {
+                if (floatWork.length < n)
+                    floatWork = new float[n];
+                in = floatWork;
+                v.sound.getValues(in, 0, n, position, xInc);
+                noteOffset = 0;
+            }
+            for (int i = 0; i < n; i++) {
+                out[offset + i] += in[noteOffset + i];
+            }
+        } else {
+            double[] out = (double[]) buffer;
+            double[] in;
+            if (v.note != null) {
+                in = (double[]) v.note;
+                n = Math.max(0, Math.min(n, v.noteLength - noteOffset));
+            } else {
+                if (work.length < n)
+                    work = new double[n];
+                in = work;
+                v.sound.getValues(in, 0, n, position, xInc);
+                noteOffset = 0;
+            }
+            for (int i = 0; i < n; i++) {
+                out[offset + i] += in[noteOffset + i];
+            }
+        }
+    }
+
+    /**
+     * A voice of the pool: the sound it is playing (null if it is free), and where the sound starts and ends.
+     */
+    private static final class Voice {
+        Sound sound;
+        int start;
+        int end;
+        // the cached rendering of the sound (a double[] or float[]), if it has been looked up
+        Object note;
+        int noteLength;
+        boolean noteFetched;
+        // true if the sound was rendered into the cache when it was looked up, and its time already reported
+        boolean noteRendered;
+    }
+
+}
@@ -0,0 +1,54 @@
+package net.bobacus.soundgen.synth;
+
+/**
+ * A Synth tree together with its compiled program. Blocks are rendered by the program; single values,
+ * which gain nothing from compiling, are still taken from the tree.
+ */
+final class CompiledSynth extends Synth {
+
+    CompiledSynth(Synth tree, SynthProgram program) {
+        this.tree = tree;
+        this.program = program;
+    }
+
+    private final Synth tree;
+    private final SynthProgram program;
+
+    public double getValue(double position) {
+        return tree.getValue(position);
+    }
+
+    @Override
+    public void getValues(double[] buffer, int offset, int count, double position, double step) {
+        program.run(buffer, offset, count, position, step);
+    }
+
+    @Override
+    public void getValues(float[] buffer, int offset, int count, double position, double step) {
+        program.run(buffer, offset, count, position, step);
+    }
+
+    // the tree may have its own idea of pitch (e.g. FM), so recompile from that
+    @Override
+    public Synth getPitch(double frequency) {
+        return SynthCompiler.compile(tree.getPitch(frequency));
+    }
+
+    // the program calls into the tree's stateful synths, so a voice needs its own program
+    @Override
+    public Synth newVoice(long seed) {
+        Synth voice = tree.newVoice(seed);
+        return (voice == tree ? this : SynthCompiler.compile(voice));
+    }
+
+    @Override
+    int compile(SynthCompiler c, SynthCompiler.Positions p) {
+        return tree.compile(c, p);
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return tree.isDeterministic();
+    }
+
+}
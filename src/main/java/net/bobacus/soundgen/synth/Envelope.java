@@ -0,0 +1,169 @@
+package net.bobacus.soundgen.synth;
+
+import java.util.Arrays;
+
+/**
+ * A multi-segment envelope: a level which starts at a given value and moves through a sequence of segments, each
+ * reaching a target level after a given length, either along a straight line or exponentially. Before position 0 the
+ * level is the starting one, and after the last segment it stays at the last target.
+ * <p>
+ * Lengths are in the same units as the positions the envelope is given, so inside an instrument (which is played by
+ * {@link Synth#getPitch}) they are in cycles of the note, and a note's envelope is shorter the higher it is.
+ * <p>
+ * Blocks are rendered incrementally: a straight segment costs a multiply-add per value, and an exponential one a
+ * multiply, by recurrence from an exact starting value for each block, with no transcendental calls per value.
+ * An envelope has no state, so one instance can be shared by all the voices that use it.
+ */
+public final class Envelope extends Synth {
+
+    /**
+     * @param start    the level at position 0
+     * @param segments the segments, in order
+     */
+    public Envelope(double start, Segment... segments) {
+        int n = segments.length;
+        starts = new double[n + 1];
+        levels = new double[n + 1];
+        lengths = new double[n];
+        exponential = new boolean[n];
+        levels[0] = start;
+        for (int s = 0; s < n; s++) {
+            Segment segment = segments[s];
+            if (!(segment.length >= 0))
+                throw new IllegalArgumentException("Segment " + s + " has a negative length");
+            if (segment.exponential && !(levels[s] * segment.level > 0))
+                throw new IllegalArgumentException("Exponential segment " + s + " must not cross or touch zero");
+            lengths[s] = segment.length;
+            exponential[s] = segment.exponential;
+            levels[s + 1] = segment.level;
+            starts[s + 1] = starts[s] + segment.length;
+        }
+    }
+
+    /**
+     * @return an envelope which goes in a straight line from one level to another
+     */
+    public static Envelope linear(double from, double to, double length) {
+        return new Envelope(from, lineTo(to, length));
+    }
+
+    /**
+     * @return an envelope which goes exponentially from one level to another, of the same sign
+     */
+    public static Envelope exponential(double from, double to, double length) {
+        return new Envelope(from, exponentialTo(to, length));
+    }
+
+    /**
+     * An attack-decay-sustain-release envelope, with straight attack and release, and an exponential decay. As an
+     * envelope doesn't know when its note will end, the release starts at a given position.
+     *
+     * @param attack  the length of the rise from 0 to 1
+     * @param decay   the length of the fall from 1 to the sustain level
+     * @param sustain the sustain level, greater than 0
+     * @param release the position the release starts at, after the decay
+     * @param fade    the length of the release, from the sustain level to 0
+     */
+    public static Envelope adsr(double attack, double decay, double sustain, double release, double fade) {
+        return new Envelope(0, lineTo(1, attack), exponentialTo(sustain, decay),
+                lineTo(sustain, release - attack - decay), lineTo(0, fade));
+    }
+
+    /**
+     * @return a segment going in a straight line to the level
+     */
+    public static Segment lineTo(double level, double length) {
+        return new Segment(level, length, false);
+    }
+
+    /**
+     * @return a segment going exponentially to the level
+     */
+    public static Segment exponentialTo(double level, double length) {
+        return new Segment(level, length, true);
+    }
+
+    // starts[s] and levels[s] are where segment s starts, and starts[n] and levels[n] where the last one ends
+    private final double[] starts;
+    private final double[] levels;
+    private final double[] lengths;
+    private final boolean[] exponential;
+
+    public double getValue(double position) {
+        if (position < 0)
+            return levels[0];
+        for (int s = 0; s < lengths.length; s++) {
+            if (position < starts[s + 1])
+                return value(s, position - starts[s]);
+        }
+        return levels[lengths.length];
+    }
+
+    // the value at p into segment s, which must not be empty
+    private double value(int s, double p) {
+        double from = levels[s];
+        double to = levels[s + 1];
+        if (exponential[s])
+            return from * Math.pow(to / from, p / lengths[s]);
+        return from + (to - from) * (p / lengths[s]);
+    }
+
+    @Override
+    public void getValues(double[] buffer, int offset, int count, double position, double step) {
+        if (!(step > 0)) {
+            super.getValues(buffer, offset, count, position, step);
+            return;
+        }
+        // i is the index in the block of the next value to fill
+        int i = 0;
+        while (i < count && position + i * step < 0)
+            buffer[offset + i++] = levels[0];
+        for (int s = 0; s < lengths.length && i < count; s++) {
+            int n = i;
+            while (n < count && position + n * step < starts[s + 1])
+                n++;
+            if (n == i)
+                continue;
+            double p = position + i * step - starts[s];
+            double from = levels[s];
+            double to = levels[s + 1];
+            if (exponential[s]) {
+                double ratio = Math.pow(to / from, step / lengths[s]);
+                double v = value(s, p);
+                for (int j = offset + i; j < offset + n; j++) {
+                    buffer[j] = v;
+                    v *= ratio;
+                }
+            } else {
+                double slope = (to - from) / lengths[s];
+                for (int j = i; j < n; j++) {
+                    buffer[offset + j] = from + slope * (p + (j - i) * step);
+                }
+            }
+            i = n;
+        }
+        Arrays.fill(buffer, offset + i, offset + count, levels[lengths.length]);
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return true;
+    }
+
+    /**
+     * A segment of an envelope: where it goes, how long it takes, and how.
+     */
+    public static final class Segment {
+
+        private Segment(double level, double length, boolean exponential) {
+            this.level = level;
+            this.length = length;
+            this.exponential = exponential;
+        }
+
+        private final double level;
+        private final double length;
+        private final boolean exponential;
+    }
+
+}
@@ -25,10 +25,15 @@ public class Instruments {
 
     public static final Synth bass = new Synth.Pitch(clarinetTongued, 0.125);
 
-    public static final Synth bassSlide = new Synth.FM(bass, secondDecay);
+    // the slide's frequency (evaluated in seconds) changes slowly, so is evaluated every millisecond
+    public static final Synth bassSlide = new Synth.FM(bass, new Synth.ControlRate(secondDecay, 0.001));
+
+    // envelope lengths are in cycles, so e.g. the release of a note at 440Hz starts after about 1.8 seconds
+    public static final Synth organEnvelope = Envelope.adsr(20, 100, 0.7, 800, 300);
+    public static final Synth organ = new Synth.MultiMix(organEnvelope, clarinet);
 
     public static final Synth[] mInstruments = {
-            silence, sine, glock, drum2, clarinet, clarinetTongued, bass
+            silence, sine, glock, drum2, clarinet, clarinetTongued, bass, organ, bassSlide
     };
 
 }
@@ -0,0 +1,79 @@
+package net.bobacus.soundgen.synth;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread stack of temporary buffers for the block rendering methods, so that nested
+ * mixers can each have a work buffer without allocating one per block.
+ * <p>
+ * Every acquire must be matched by a release, in reverse order.
+ */
+final class ScratchBuffers {
+
+    private static final ThreadLocal<ScratchBuffers> local = ThreadLocal.withInitial(ScratchBuffers::new);
+
+    static ScratchBuffers get() {
+        return local.get();
+    }
+
+    private ScratchBuffers() { /* use get() */ }
+
+    private double[][] buffers = new double[8][];
+    private int depth = 0;
+
+    // arrays of buffers handed out by acquireAll, likewise a stack
+    private double[][][] sets = new double[4][][];
+    private int setDepth = 0;
+
+    /**
+     * @param size minimum length of the buffer
+     * @return a buffer of at least the given length, with undefined contents
+     */
+    double[] acquire(int size) {
+        if (depth == buffers.length) {
+            buffers = Arrays.copyOf(buffers, depth * 2);
+        }
+        double[] b = buffers[depth];
+        if (b == null || b.length < size) {
+            b = new double[size];
+            buffers[depth] = b;
+        }
+        depth++;
+        return b;
+    }
+
+    void release() {
+        depth--;
+    }
+
+    /**
+     * Acquires several buffers at once.
+     *
+     * @param n    the number of buffers
+     * @param size minimum length of each buffer
+     * @return an array whose first n elements are the buffers; the array is reused, so must not be kept
+     */
+    double[][] acquireAll(int n, int size) {
+        if (setDepth == sets.length)
+            sets = Arrays.copyOf(sets, setDepth * 2);
+        double[][] set = sets[setDepth];
+        if (set == null || set.length < n) {
+            set = new double[n][];
+            sets[setDepth] = set;
+        }
+        setDepth++;
+        for (int i = 0; i < n; i++) {
+            set[i] = acquire(size);
+        }
+        return set;
+    }
+
+    /**
+     * @param n the number of buffers given to the matching acquireAll
+     */
+    void releaseAll(int n) {
+        depth -= n;
+        setDepth--;
+    }
+
+}
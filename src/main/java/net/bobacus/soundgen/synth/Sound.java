@@ -1,24 +1,90 @@
 package net.bobacus.soundgen.synth;
 
+import java.util.Arrays;
 
 /**
  * A Sound represents a synthesizer object with duration
  */
 public class Sound extends Synth {
     public Sound(Synth synth, double duration) {
+        this(synth, duration, -1, 0);
+    }
+
+    /**
+     * @param synth      the instrument at the given pitch
+     * @param duration   the duration, in seconds
+     * @param instrument the index of the instrument in {@link Instruments#mInstruments}
+     * @param frequency  the pitch the instrument is played at
+     */
+    public Sound(Synth synth, double duration, int instrument, double frequency) {
         this.duration = duration;
         this.synth = synth;
+        this.instrument = instrument;
+        this.frequency = frequency;
     }
 
     public double getValue(double t) {
         return t <= duration ? synth.getValue(t) : 0;
     }
 
+    @Override
+    public void getValues(double[] buffer, int offset, int count, double position, double step) {
+        // number of leading positions that are within the duration (positions increase along the block)
+        int n = count;
+        while (n > 0 && position + (n - 1) * step > duration)
+            n--;
+        synth.getValues(buffer, offset, n, position, step);
+        Arrays.fill(buffer, offset + n, offset + count, 0);
+    }
+
+    @Override
+    public void getValues(float[] buffer, int offset, int count, double position, double step) {
+        int n = count;
+        while (n > 0 && position + (n - 1) * step > duration)
+            n--;
+        synth.getValues(buffer, offset, n, position, step);
+        Arrays.fill(buffer, offset + n, offset + count, 0);
+    }
+
+    @Override
+    int compile(SynthCompiler c, SynthCompiler.Positions p) {
+        int r = synth.compile(c, p);
+        c.gate(r, p, duration);
+        return r;
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return synth.isDeterministic();
+    }
+
+    /**
+     * @return the same sound, with its own state if the synth has any (see {@link Synth#newVoice})
+     */
+    @Override
+    public Sound newVoice(long seed) {
+        Synth voice = synth.newVoice(seed);
+        return (voice == synth ? this : new Sound(voice, duration, instrument, frequency));
+    }
+
     public double getDuration() {
         return duration;
     }
 
+    /**
+     * @return the index of the instrument in {@link Instruments#mInstruments}, or -1 if the Sound wasn't made from one
+     */
+    public int getInstrument() {
+        return instrument;
+    }
+
+    public double getFrequency() {
+        return frequency;
+    }
+
     private final Synth synth;
     private final double duration;
+    private final int instrument;
+    private final double frequency;
 
 }
@@ -1,11 +1,66 @@
 package net.bobacus.soundgen.synth;
 
+import java.util.Arrays;
+
 // abstract out the essence of the synthesizer
 public abstract class Synth {
 
     // returns value from -1 to 1, given a position
     public abstract double getValue(double position);
 
+    // block version of getValue: fills buffer[offset..offset+count) with the values at
+    // position, position + step, position + 2 * step, ...
+    // subclasses override this with tight loops over the whole block
+    public void getValues(double[] buffer, int offset, int count, double position, double step) {
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = getValue(position + i * step);
+        }
+    }
+
+    // single precision version of getValues: positions are still computed in double precision, and only the
+    // values are narrowed; by default the block is rendered in double precision and then narrowed
+    public void getValues(float[] buffer, int offset, int count, double position, double step) {
+        ScratchBuffers scratch = ScratchBuffers.get();
+        double[] b = scratch.acquire(count);
+        try {
+            getValues(b, 0, count, position, step);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (float) b[i];
+            }
+        } finally {
+            scratch.release();
+        }
+    }
+
+    // emits instructions which compute this synth at the given positions into a register, and returns the register
+    // (see SynthCompiler); by default the compiled program calls back into this synth
+    int compile(SynthCompiler c, SynthCompiler.Positions p) {
+        return c.call(this, p);
+    }
+
+    // true if values depend only on the position, so that a rendering can be reused;
+    // false for stateful or random synths, and for any subclass that doesn't say otherwise
+    public boolean isDeterministic() {
+        return false;
+    }
+
+    // returns a synth which plays the same as this one, but with its own state, for one voice (i.e. note) to use;
+    // random synths take their seed from the given one, so a voice sounds the same every time it is given the same
+    // seed, and voices can be rendered in parallel; synths without state return themselves, and synths made of
+    // other synths return a copy made of their parts' voices if any of those differ
+    public Synth newVoice(long seed) {
+        return this;
+    }
+
+    // derives the seed for a part of a synth from the seed for the whole, mixing it (by the splitmix64 finaliser)
+    // so that nearby seeds give unrelated ones
+    static long partSeed(long seed, int part) {
+        long z = seed + (part + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     // convenience method for getting a frequency-scaled version of a synth
     public Synth getPitch(double frequency) {
         return new Pitch(this, frequency);
@@ -13,6 +68,7 @@ public abstract class Synth {
 
 
     // Synthesizer function subclasses:
+    // sine wave, read from a table by phase accumulation
     public static class Sine extends Synth {
         Sine() {
             frequency = 1.0;
@@ -23,29 +79,89 @@ public abstract class Synth {
         }
 
         public double getValue(double position) {
-            return Math.sin(2 * Math.PI * position * frequency);
+            return table.getValue(position * frequency);
+        }
+
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            table.getValues(buffer, offset, count, position * frequency, step * frequency);
+        }
+
+        @Override
+        public void getValues(float[] buffer, int offset, int count, double position, double step) {
+            table.getValues(buffer, offset, count, position * frequency, step * frequency);
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            return c.wavetable(table, p.scaled(frequency));
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return true;
         }
 
         private final double frequency;
+
+        private static final Wavetable table = new Wavetable(new double[]{1});
     }
 
     // Noise (for percussion, e.g.) N.B. independent of parameter
+    // each instance has its own generator (xorshift64*), so every voice should have its own instance (see newVoice)
     public static class Noise extends Synth {
-        Noise() { /* empty default constructor */ }
+        Noise() {
+            this(0);
+        }
+
+        Noise(long seed) {
+            state = partSeed(seed, 0);
+            // the generator never leaves zero
+            if (state == 0)
+                state = 1;
+        }
+
+        private long state;
 
         public double getValue(double x) {
-            return 2 * Math.random() - 1;
+            return next();
+        }
+
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            for (int i = offset; i < offset + count; i++) {
+                buffer[i] = next();
+            }
+        }
+
+        @Override
+        public Synth newVoice(long seed) {
+            return new Noise(seed);
+        }
+
+        // the next value, from -1 to 1
+        final double next() {
+            long x = state;
+            x ^= x >>> 12;
+            x ^= x << 25;
+            x ^= x >>> 27;
+            state = x;
+            return ((x * 0x2545F4914F6CDD1DL) >>> 11) * 0x1.0p-52 - 1;
         }
     }
 
-    // Brown noise - NB this is stateful
-    public static class BrownNoise extends Synth {
+    // Brown noise - NB this is stateful, so every voice should have its own instance (see newVoice)
+    public static class BrownNoise extends Noise {
         BrownNoise() { /* empty */ }
 
+        BrownNoise(long seed) {
+            super(seed);
+        }
+
         private double current = 0;
 
         public double getValue(double x) {
-            double offset = x * (2.0 * Math.random() - 1);
+            double offset = x * next();
             current += offset;
             if (current > 1.0)
                 current = 1.0;
@@ -53,6 +169,18 @@ public abstract class Synth {
                 current = -1.0;
             return current;
         }
+
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = getValue(position + i * step);
+            }
+        }
+
+        @Override
+        public Synth newVoice(long seed) {
+            return new BrownNoise(seed);
+        }
     }
 
 
@@ -67,6 +195,40 @@ public abstract class Synth {
             return (f1.getValue(position) + f2.getValue(position)) / 2;
         }
 
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            ScratchBuffers scratch = ScratchBuffers.get();
+            double[] b = scratch.acquire(count);
+            try {
+                f1.getValues(buffer, offset, count, position, step);
+                f2.getValues(b, 0, count, position, step);
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] = (buffer[offset + i] + b[i]) / 2;
+                }
+            } finally {
+                scratch.release();
+            }
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            int r = f1.compile(c, p);
+            c.mix(r, f2.compile(c, p));
+            return r;
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return f1.isDeterministic() && f2.isDeterministic();
+        }
+
+        @Override
+        public Synth newVoice(long seed) {
+            Synth v1 = f1.newVoice(partSeed(seed, 0));
+            Synth v2 = f2.newVoice(partSeed(seed, 1));
+            return (v1 == f1 && v2 == f2 ? this : new Mix2(v1, v2));
+        }
+
         private final Synth f1, f2;
     }
 
@@ -81,6 +243,27 @@ public abstract class Synth {
             return (f.getValue(position * frequency));
         }
 
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            f.getValues(buffer, offset, count, position * frequency, step * frequency);
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            return f.compile(c, p.scaled(frequency));
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return f.isDeterministic();
+        }
+
+        @Override
+        public Synth newVoice(long seed) {
+            Synth v = f.newVoice(seed);
+            return (v == f ? this : new Pitch(v, frequency));
+        }
+
         private final Synth f;
         private final double frequency;
     }
@@ -92,6 +275,26 @@ public abstract class Synth {
         public double getValue(double position) {
             return 0;
         }
+
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            Arrays.fill(buffer, offset, offset + count, 0);
+        }
+
+        @Override
+        public void getValues(float[] buffer, int offset, int count, double position, double step) {
+            Arrays.fill(buffer, offset, offset + count, 0);
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            return c.fill(0);
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return true;
+        }
     }
 
     public static class Offset extends Synth {
@@ -103,6 +306,21 @@ public abstract class Synth {
             return value;
         }
 
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            Arrays.fill(buffer, offset, offset + count, value);
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            return c.fill(value);
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return true;
+        }
+
         private final double value;
     }
 
@@ -117,10 +335,46 @@ public abstract class Synth {
             return f.getValue(position) * g.getValue(position);
         }
 
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            ScratchBuffers scratch = ScratchBuffers.get();
+            double[] b = scratch.acquire(count);
+            try {
+                f.getValues(buffer, offset, count, position, step);
+                g.getValues(b, 0, count, position, step);
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] *= b[i];
+                }
+            } finally {
+                scratch.release();
+            }
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            int r = f.compile(c, p);
+            c.multiply(r, g.compile(c, p));
+            return r;
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return f.isDeterministic() && g.isDeterministic();
+        }
+
+        @Override
+        public Synth newVoice(long seed) {
+            Synth vf = f.newVoice(partSeed(seed, 0));
+            Synth vg = g.newVoice(partSeed(seed, 1));
+            return (vf == f && vg == g ? this : new MultiMix(vf, vg));
+        }
+
         private final Synth f, g;
     }
 
     // exponential (e.g. for decay)
+    // a block is rendered by recurrence, with one multiply per value; it starts from an exact power each block, so
+    // rounding errors don't build up over a note (see also Envelope)
     public static class Exponential extends Synth {
         Exponential(double e) {
             this.e = e;
@@ -130,25 +384,70 @@ public abstract class Synth {
             return Math.pow(e, position);
         }
 
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            powers(e, buffer, offset, count, position, step);
+        }
+
+        // fills buffer[offset..offset+count) with e ^ (position + i * step)
+        static void powers(double e, double[] buffer, int offset, int count, double position, double step) {
+            double v = Math.pow(e, position);
+            double ratio = Math.pow(e, step);
+            for (int i = offset; i < offset + count; i++) {
+                buffer[i] = v;
+                v *= ratio;
+            }
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            return c.pow(e, p);
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return true;
+        }
+
         private final double e;
     }
 
     // harmonics - specify amplitudes
+    // the whole spectrum is precomputed into a wavetable, so each value is a single table lookup
     public static class Harmonic extends Synth {
         Harmonic(double[] amps) {
-            this.amps = amps;
+            double[] scaled = new double[amps.length];
+            for (int i = 0; i < amps.length; i++) {
+                scaled[i] = amps[i] / amps.length;
+            }
+            this.table = new Wavetable(scaled);
         }
 
         public double getValue(double x) {
-            double c = 0;
-            for (int i = 0; i < amps.length; i++) {
-                double y = amps[i] * Math.sin(2 * Math.PI * x * (i + 1));
-                c += y;
-            }
-            return c / amps.length;
+            return table.getValue(x);
+        }
+
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            table.getValues(buffer, offset, count, position, step);
         }
 
-        private final double[] amps;
+        @Override
+        public void getValues(float[] buffer, int offset, int count, double position, double step) {
+            table.getValues(buffer, offset, count, position, step);
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            return c.wavetable(table, p);
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return true;
+        }
+
+        private final Wavetable table;
     }
 
     // composition: h = f o g
@@ -162,6 +461,35 @@ public abstract class Synth {
             return f.getValue(g.getValue(x));
         }
 
+        // g is rendered as a block; f sees arbitrary positions, so is evaluated in place
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            g.getValues(buffer, offset, count, position, step);
+            for (int i = offset; i < offset + count; i++) {
+                buffer[i] = f.getValue(buffer[i]);
+            }
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            int r = g.compile(c, p);
+            int result = f.compile(c, SynthCompiler.Positions.of(r));
+            c.free(r);
+            return result;
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return f.isDeterministic() && g.isDeterministic();
+        }
+
+        @Override
+        public Synth newVoice(long seed) {
+            Synth vf = f.newVoice(partSeed(seed, 0));
+            Synth vg = g.newVoice(partSeed(seed, 1));
+            return (vf == f && vg == g ? this : new Composition(vf, vg));
+        }
+
         private final Synth f, g;
     }
 
@@ -174,10 +502,13 @@ public abstract class Synth {
         }
 
         FM(FM orig, double pitch) {
-            this.s = orig.s;
-            this.freq = orig.freq;
+            this(orig.s, orig.freq, pitch);
+        }
+
+        private FM(Synth s, Synth freq, double pitch) {
+            this.s = s;
+            this.freq = freq;
             this.pitch = pitch;
-            System.out.println("FM: s=" + s + ", freq=" + freq + ", pitch=" + pitch);
         }
 
         @Override
@@ -189,8 +520,112 @@ public abstract class Synth {
             return s.getValue(x * pitch * freq.getValue(x));
         }
 
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            freq.getValues(buffer, offset, count, position, step);
+            for (int i = 0; i < count; i++) {
+                double x = position + i * step;
+                buffer[offset + i] = s.getValue(x * pitch * buffer[offset + i]);
+            }
+        }
+
+        @Override
+        int compile(SynthCompiler c, SynthCompiler.Positions p) {
+            int r = freq.compile(c, p);
+            c.multiplyByPositions(r, p, pitch);
+            int result = s.compile(c, SynthCompiler.Positions.of(r));
+            c.free(r);
+            return result;
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return s.isDeterministic() && freq.isDeterministic();
+        }
+
+        @Override
+        public Synth newVoice(long seed) {
+            Synth vs = s.newVoice(partSeed(seed, 0));
+            Synth vf = freq.newVoice(partSeed(seed, 1));
+            return (vs == s && vf == freq ? this : new FM(vs, vf, pitch));
+        }
+
         private final Synth s;
         private final Synth freq;
         private final double pitch;
     }
+
+    // control rate (as opposed to audio rate, like Csound's k-rate): f is only evaluated at every interval of
+    // position, and linearly interpolated in between, for slowly varying synths such as envelopes and modulators;
+    // the points are on a fixed grid, so a value doesn't depend on which block it is rendered in, and blocks
+    // match getValue; a block of n values at a step of interval / k costs about n / k values of f
+    public static class ControlRate extends Synth {
+        ControlRate(Synth f, double interval) {
+            if (!(interval > 0))
+                throw new IllegalArgumentException("interval must be positive");
+            this.f = f;
+            this.compiled = SynthCompiler.compile(f);
+            this.interval = interval;
+        }
+
+        public double getValue(double x) {
+            double u = x / interval;
+            double k = Math.floor(u);
+            double a = f.getValue(k * interval);
+            double b = f.getValue((k + 1) * interval);
+            return a + (b - a) * (u - k);
+        }
+
+        @Override
+        public void getValues(double[] buffer, int offset, int count, double position, double step) {
+            if (!(step > 0)) {
+                super.getValues(buffer, offset, count, position, step);
+                return;
+            }
+            // u is the position in intervals, and the block runs between grid points first and first + points - 1
+            double u0 = position / interval;
+            double du = step / interval;
+            double first = Math.floor(u0);
+            int points = (int) (Math.floor(u0 + (count - 1) * du) - first) + 2;
+            ScratchBuffers scratch = ScratchBuffers.get();
+            double[] v = scratch.acquire(points);
+            try {
+                compiled.getValues(v, 0, points, first * interval, interval);
+                int i = 0;
+                for (int j = 0; j < points - 1 && i < count; j++) {
+                    double k = first + j;
+                    int n = i;
+                    while (n < count && u0 + n * du < k + 1)
+                        n++;
+                    double a = v[j];
+                    double d = v[j + 1] - a;
+                    for (int m = i; m < n; m++) {
+                        buffer[offset + m] = a + d * (u0 + m * du - k);
+                    }
+                    i = n;
+                }
+                // only if rounding put the last values just past the last grid point
+                for (; i < count; i++) {
+                    buffer[offset + i] = v[points - 1];
+                }
+            } finally {
+                scratch.release();
+            }
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return f.isDeterministic();
+        }
+
+        @Override
+        public Synth newVoice(long seed) {
+            Synth v = f.newVoice(seed);
+            return (v == f ? this : new ControlRate(v, interval));
+        }
+
+        private final Synth f;
+        private final Synth compiled;
+        private final double interval;
+    }
 }
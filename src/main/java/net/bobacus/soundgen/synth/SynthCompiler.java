@@ -0,0 +1,214 @@
+package net.bobacus.soundgen.synth;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flattens a tree of Synths into a linear program of block instructions over numbered registers
+ * (see {@link SynthProgram}), which is then run by a single interpreter loop without recursion or
+ * virtual calls.
+ * <p>
+ * Each Synth subclass emits its own instructions through {@link Synth#compile}. Synths that have no
+ * instructions of their own (e.g. the noise generators) are called through the tree interpreter from
+ * within the program, and a tree that would consist of nothing but such calls is not compiled at all.
+ */
+public final class SynthCompiler {
+
+    /**
+     * @param synth the tree to compile
+     * @return a Synth which renders the same values as the tree, or the tree itself if compiling would not help
+     */
+    public static Synth compile(Synth synth) {
+        if (synth instanceof CompiledSynth)
+            return synth;
+        SynthCompiler c = new SynthCompiler();
+        int result = synth.compile(c, Positions.LINEAR);
+        if (c.calls == c.instructions)
+            return synth;
+        return new CompiledSynth(synth, new SynthProgram(c.code.toArray(), c.constants.toArray(),
+                c.objects.toArray(), c.registerCount, result));
+    }
+
+    private SynthCompiler() { /* use compile() */ }
+
+    /**
+     * The positions at which a Synth is to be evaluated: either scale * (x + i * step) for the block's
+     * start position x, or scale * r[i] for some register r.
+     */
+    static final class Positions {
+
+        static final Positions LINEAR = new Positions(-1, 1);
+
+        static Positions of(int register) {
+            return new Positions(register, 1);
+        }
+
+        private Positions(int register, double scale) {
+            this.register = register;
+            this.scale = scale;
+        }
+
+        final int register;
+        final double scale;
+
+        boolean isLinear() {
+            return register < 0;
+        }
+
+        Positions scaled(double factor) {
+            return new Positions(register, scale * factor);
+        }
+    }
+
+    private final IntList code = new IntList();
+    private final DoubleList constants = new DoubleList();
+    private final List<Object> objects = new ArrayList<>();
+
+    private final IntList freeRegisters = new IntList();
+    private int registerCount = 0;
+    private int instructions = 0;
+    private int calls = 0;
+
+    int allocate() {
+        if (freeRegisters.size() > 0)
+            return freeRegisters.pop();
+        return registerCount++;
+    }
+
+    void free(int register) {
+        freeRegisters.add(register);
+    }
+
+    /**
+     * Calls back into the tree interpreter for the given synth.
+     */
+    int call(Synth synth, Positions p) {
+        calls++;
+        int dst = allocate();
+        if (p.isLinear())
+            emit(SynthProgram.CALL_LINEAR, dst, object(synth), constant(p.scale));
+        else
+            emit(SynthProgram.CALL, dst, object(synth), p.register, constant(p.scale));
+        return dst;
+    }
+
+    int fill(double value) {
+        int dst = allocate();
+        emit(SynthProgram.CONST, dst, constant(value));
+        return dst;
+    }
+
+    int wavetable(Wavetable table, Positions p) {
+        int dst = allocate();
+        if (p.isLinear())
+            emit(SynthProgram.TABLE_LINEAR, dst, object(table), constant(p.scale));
+        else
+            emit(SynthProgram.TABLE, dst, object(table), p.register, constant(p.scale));
+        return dst;
+    }
+
+    int pow(double base, Positions p) {
+        int dst = allocate();
+        if (p.isLinear())
+            emit(SynthProgram.POW_LINEAR, dst, constant(base), constant(p.scale));
+        else
+            emit(SynthProgram.POW, dst, constant(base), p.register, constant(p.scale));
+        return dst;
+    }
+
+    /**
+     * dst = (dst + a) / 2, freeing a
+     */
+    void mix(int dst, int a) {
+        emit(SynthProgram.MIX, dst, a);
+        free(a);
+    }
+
+    /**
+     * dst = dst * a, freeing a
+     */
+    void multiply(int dst, int a) {
+        emit(SynthProgram.MUL, dst, a);
+        free(a);
+    }
+
+    /**
+     * dst = dst * factor * positions
+     */
+    void multiplyByPositions(int dst, Positions p, double factor) {
+        if (p.isLinear())
+            emit(SynthProgram.MUL_LINEAR, dst, constant(p.scale * factor));
+        else
+            emit(SynthProgram.MUL_SCALED, dst, p.register, constant(p.scale * factor));
+    }
+
+    /**
+     * dst = 0 wherever the position is past the limit
+     */
+    void gate(int dst, Positions p, double limit) {
+        if (p.isLinear())
+            emit(SynthProgram.GATE_LINEAR, dst, constant(limit), constant(p.scale));
+        else
+            emit(SynthProgram.GATE, dst, constant(limit), p.register, constant(p.scale));
+    }
+
+    private void emit(int... instruction) {
+        instructions++;
+        for (int i : instruction)
+            code.add(i);
+    }
+
+    private int constant(double value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private int object(Object o) {
+        objects.add(o);
+        return objects.size() - 1;
+    }
+
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(int v) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class DoubleList {
+        private double[] values = new double[16];
+        private int size = 0;
+
+        void add(double v) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int size() {
+            return size;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+}
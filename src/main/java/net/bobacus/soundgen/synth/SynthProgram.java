@@ -0,0 +1,201 @@
+package net.bobacus.soundgen.synth;
+
+/**
+ * A compiled Synth: a straight-line sequence of block instructions, each operating on whole registers
+ * (buffers of one block's values). Instructions are encoded as an opcode followed by operands, which are
+ * register numbers or indexes into the constant and object pools.
+ * <p>
+ * Positions are either "linear", i.e. k * (x + i * step) for the block's start position x, or taken from a
+ * register and scaled by k.
+ */
+final class SynthProgram {
+
+    static final int CONST = 0;         // dst, value:          dst = value
+    static final int TABLE_LINEAR = 1;  // dst, table, k:       dst = table(linear k)
+    static final int TABLE = 2;         // dst, table, src, k:  dst = table(k * src)
+    static final int POW_LINEAR = 3;    // dst, base, k:        dst = base ^ (linear k)
+    static final int POW = 4;           // dst, base, src, k:   dst = base ^ (k * src)
+    static final int MIX = 5;           // dst, a:              dst = (dst + a) / 2
+    static final int MUL = 6;           // dst, a:              dst = dst * a
+    static final int MUL_LINEAR = 7;    // dst, k:              dst = dst * (linear k)
+    static final int MUL_SCALED = 8;    // dst, src, k:         dst = dst * k * src
+    static final int GATE_LINEAR = 9;   // dst, limit, k:       dst = 0 where (linear k) > limit
+    static final int GATE = 10;         // dst, limit, src, k:  dst = 0 where k * src > limit
+    static final int CALL_LINEAR = 11;  // dst, synth, k:       dst = synth.getValues(linear k)
+    static final int CALL = 12;         // dst, synth, src, k:  dst = synth.getValue(k * src)
+
+    SynthProgram(int[] code, double[] constants, Object[] objects, int registerCount, int result) {
+        this.code = code;
+        this.constants = constants;
+        this.objects = objects;
+        this.registerCount = registerCount;
+        this.result = result;
+    }
+
+    private final int[] code;
+    private final double[] constants;
+    private final Object[] objects;
+    private final int registerCount;
+    private final int result;
+
+    void run(double[] buffer, int offset, int count, double x, double step) {
+        ScratchBuffers scratch = ScratchBuffers.get();
+        double[][] r = scratch.acquireAll(registerCount, count);
+        try {
+            execute(r, count, x, step);
+            System.arraycopy(r[result], 0, buffer, offset, count);
+        } finally {
+            scratch.releaseAll(registerCount);
+        }
+    }
+
+    /**
+     * Runs the program in double precision, narrowing only the result.
+     */
+    void run(float[] buffer, int offset, int count, double x, double step) {
+        ScratchBuffers scratch = ScratchBuffers.get();
+        double[][] r = scratch.acquireAll(registerCount, count);
+        try {
+            execute(r, count, x, step);
+            double[] result = r[this.result];
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (float) result[i];
+            }
+        } finally {
+            scratch.releaseAll(registerCount);
+        }
+    }
+
+    private void execute(double[][] r, int count, double x, double step) {
+        final int[] code = this.code;
+        final double[] c = this.constants;
+        int pc = 0;
+        while (pc < code.length) {
+            switch (code[pc]) {
+                case CONST: {
+                    double[] dst = r[code[pc + 1]];
+                    double v = c[code[pc + 2]];
+                    for (int i = 0; i < count; i++) {
+                        dst[i] = v;
+                    }
+                    pc += 3;
+                    break;
+                }
+                case TABLE_LINEAR: {
+                    double k = c[code[pc + 3]];
+                    ((Wavetable) objects[code[pc + 2]]).getValues(r[code[pc + 1]], 0, count, k * x, k * step);
+                    pc += 4;
+                    break;
+                }
+                case TABLE: {
+                    double[] dst = r[code[pc + 1]];
+                    Wavetable t = (Wavetable) objects[code[pc + 2]];
+                    double[] src = r[code[pc + 3]];
+                    double k = c[code[pc + 4]];
+                    for (int i = 0; i < count; i++) {
+                        dst[i] = t.getValue(k * src[i]);
+                    }
+                    pc += 5;
+                    break;
+                }
+                case POW_LINEAR: {
+                    double k = c[code[pc + 3]];
+                    Synth.Exponential.powers(c[code[pc + 2]], r[code[pc + 1]], 0, count, k * x, k * step);
+                    pc += 4;
+                    break;
+                }
+                case POW: {
+                    double[] dst = r[code[pc + 1]];
+                    double base = c[code[pc + 2]];
+                    double[] src = r[code[pc + 3]];
+                    double k = c[code[pc + 4]];
+                    for (int i = 0; i < count; i++) {
+                        dst[i] = Math.pow(base, k * src[i]);
+                    }
+                    pc += 5;
+                    break;
+                }
+                case MIX: {
+                    double[] dst = r[code[pc + 1]];
+                    double[] a = r[code[pc + 2]];
+                    for (int i = 0; i < count; i++) {
+                        dst[i] = (dst[i] + a[i]) / 2;
+                    }
+                    pc += 3;
+                    break;
+                }
+                case MUL: {
+                    double[] dst = r[code[pc + 1]];
+                    double[] a = r[code[pc + 2]];
+                    for (int i = 0; i < count; i++) {
+                        dst[i] *= a[i];
+                    }
+                    pc += 3;
+                    break;
+                }
+                case MUL_LINEAR: {
+                    double[] dst = r[code[pc + 1]];
+                    double k = c[code[pc + 2]];
+                    for (int i = 0; i < count; i++) {
+                        dst[i] *= k * (x + i * step);
+                    }
+                    pc += 3;
+                    break;
+                }
+                case MUL_SCALED: {
+                    double[] dst = r[code[pc + 1]];
+                    double[] src = r[code[pc + 2]];
+                    double k = c[code[pc + 3]];
+                    for (int i = 0; i < count; i++) {
+                        dst[i] *= k * src[i];
+                    }
+                    pc += 4;
+                    break;
+                }
+                case GATE_LINEAR: {
+                    double[] dst = r[code[pc + 1]];
+                    double limit = c[code[pc + 2]];
+                    double k = c[code[pc + 3]];
+                    for (int i = 0; i < count; i++) {
+                        if (k * (x + i * step) > limit)
+                            dst[i] = 0;
+                    }
+                    pc += 4;
+                    break;
+                }
+                case GATE: {
+                    double[] dst = r[code[pc + 1]];
+                    double limit = c[code[pc + 2]];
+                    double[] src = r[code[pc + 3]];
+                    double k = c[code[pc + 4]];
+                    for (int i = 0; i < count; i++) {
+                        if (k * src[i] > limit)
+                            dst[i] = 0;
+                    }
+                    pc += 5;
+                    break;
+                }
+                case CALL_LINEAR: {
+                    double k = c[code[pc + 3]];
+                    ((Synth) objects[code[pc + 2]]).getValues(r[code[pc + 1]], 0, count, k * x, k * step);
+                    pc += 4;
+                    break;
+                }
+                case CALL: {
+                    double[] dst = r[code[pc + 1]];
+                    Synth s = (Synth) objects[code[pc + 2]];
+                    double[] src = r[code[pc + 3]];
+                    double k = c[code[pc + 4]];
+                    for (int i = 0; i < count; i++) {
+                        dst[i] = s.getValue(k * src[i]);
+                    }
+                    pc += 5;
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package net.bobacus.soundgen.synth;
+
+/**
+ * One period of a harmonic spectrum, precomputed into tables and read back with linear interpolation.
+ * <p>
+ * A table is built for each number of partials, so that a block rendered at a high phase increment can
+ * use the table holding only the partials that are below the Nyquist frequency (i.e. band-limited).
+ * Phases are measured in cycles, so the value at phase p is sum(amps[h] * sin(2 * PI * (h + 1) * p)).
+ */
+final class Wavetable {
+
+    private static final int SIZE = 4096;
+
+    /**
+     * @param amps the amplitudes of the partials, starting with the fundamental
+     */
+    Wavetable(double[] amps) {
+        tables = new double[amps.length][];
+        double[] t = new double[SIZE + 1];
+        for (int h = 0; h < amps.length; h++) {
+            double w = 2 * Math.PI * (h + 1) / SIZE;
+            for (int i = 0; i < SIZE; i++) {
+                t[i] += amps[h] * Math.sin(w * i);
+            }
+            // guard point, so that interpolation never needs to wrap
+            t[SIZE] = t[0];
+            tables[h] = t.clone();
+        }
+    }
+
+    // tables[n - 1] holds the first n partials
+    private final double[][] tables;
+
+    /**
+     * @param phase position in cycles, any value
+     * @return the interpolated value of the full spectrum
+     */
+    double getValue(double phase) {
+        return lookup(tables[tables.length - 1], phase - Math.floor(phase));
+    }
+
+    /**
+     * Renders a block by phase accumulation, using only those partials which fit below half the sample rate.
+     *
+     * @param buffer    the buffer to fill
+     * @param offset    index of the first value to write
+     * @param count     number of values to write
+     * @param phase     phase of the first value, in cycles
+     * @param increment phase increment per value, in cycles
+     */
+    void getValues(double[] buffer, int offset, int count, double phase, double increment) {
+        double[] t = tables[getPartialCount(increment) - 1];
+        double p = phase - Math.floor(phase);
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = lookup(t, p);
+            p += increment;
+            if (p >= 1 || p < 0)
+                p -= Math.floor(p);
+        }
+    }
+
+    /**
+     * Single precision version of {@link #getValues(double[], int, int, double, double)}; the phase is still
+     * accumulated in double precision.
+     */
+    void getValues(float[] buffer, int offset, int count, double phase, double increment) {
+        double[] t = tables[getPartialCount(increment) - 1];
+        double p = phase - Math.floor(phase);
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = (float) lookup(t, p);
+            p += increment;
+            if (p >= 1 || p < 0)
+                p -= Math.floor(p);
+        }
+    }
+
+    private int getPartialCount(double increment) {
+        double inc = Math.abs(increment);
+        if (inc == 0)
+            return tables.length;
+        int n = (int) (0.5 / inc);
+        if (n * inc >= 0.5)
+            n--;
+        return Math.max(1, Math.min(n, tables.length));
+    }
+
+    private static double lookup(double[] t, double p) {
+        double x = p * SIZE;
+        int i = (int) x;
+        double frac = x - i;
+        return t[i] + frac * (t[i + 1] - t[i]);
+    }
+
+}
@@ -1,5 +1,6 @@
 package net.bobacus.util;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -32,16 +33,73 @@ import java.util.List;
  * we want to find the n with the t-th dot (counting from zero)
  * <p>
  * Probably best not to put zeroes in the list. It makes things complicated.
+ * <p>
+ * The cumulative sequence is computed once, so that each search is a binary search. For positions that mostly
+ * increase (e.g. playback), a {@link Cursor} searches forward from its previous result instead.
+ * Lengths can be appended with {@link #add(int)}, for sequences that are still being produced.
+ * Lengths must not be negative.
  *
  * @author rob
  */
 public class LengthList {
 
+    public LengthList() {
+        this(new int[0]);
+    }
+
     public LengthList(List<Integer> list) {
-        this.list = list;
+        cumulative = new long[list.size() + 1];
+        for (int s : list) {
+            cumulative[size + 1] = cumulative[size] + s;
+            size++;
+        }
+    }
+
+    public LengthList(int[] lengths) {
+        cumulative = new long[lengths.length + 1];
+        for (int s : lengths) {
+            cumulative[size + 1] = cumulative[size] + s;
+            size++;
+        }
+    }
+
+    // S(0) .. S(size); any further elements are spare capacity
+    private long[] cumulative;
+    private int size = 0;
+
+    /**
+     * Appends a length to the end of the list.
+     *
+     * @param length the length, not negative
+     */
+    public void add(int length) {
+        if (size + 1 == cumulative.length)
+            cumulative = Arrays.copyOf(cumulative, Math.max(16, cumulative.length * 2));
+        cumulative[size + 1] = cumulative[size] + length;
+        size++;
+    }
+
+    /**
+     * @return the number of lengths in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of the length
+     * @return the length
+     */
+    public int getLength(int index) {
+        return (int) (cumulative[index + 1] - cumulative[index]);
     }
 
-    private final List<Integer> list;
+    /**
+     * @return the sum of all the lengths
+     */
+    public long getTotalLength() {
+        return cumulative[size];
+    }
 
     /**
      * Searches for the index of the length which contains the nth dot.
@@ -52,15 +110,7 @@ public class LengthList {
      * @return index of length in list
      */
     public int getIndexForPosition(int position) {
-        int i = -1;
-        int sum = 0;
-        for (int s : list) {
-            if (sum > position)
-                break;
-            sum += s;
-            i++;
-        }
-        return i;
+        return search(position, 0);
     }
 
     /**
@@ -76,6 +126,13 @@ public class LengthList {
         return position - start;
     }
 
+    /**
+     * @return a new cursor for searching forwards through this list
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
     /**
      * Calculates the starting position of a given length
      *
@@ -83,16 +140,67 @@ public class LengthList {
      * @return the position of the first point in the length
      */
     private int getStartPosition(int index) {
-        int sum = 0;
-        int i = 0;
-        for (int s : list) {
-            if (i >= index)
-                break;
-            sum += s;
-            i++;
+        return (int) cumulative[Math.max(index, 0)];
+    }
+
+    /**
+     * Finds the highest n, no lower than from, such that S(n) <= position and n < number of lengths.
+     * S(from) must be <= position, unless from is 0.
+     */
+    private int search(int position, int from) {
+        int lo = from;
+        int hi = size - 1;
+        if (hi < 0 || cumulative[0] > position)
+            return -1;
+        // invariant: S(lo) <= position, and the answer is in [lo, hi]
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (cumulative[mid] <= position)
+                lo = mid;
+            else
+                hi = mid - 1;
         }
-        return sum;
+        return lo;
     }
 
+    /**
+     * Remembers the result of its last search, so that searching for the same or a later position costs
+     * little more than looking at the following lengths. Searching backwards falls back to a full binary search.
+     * Not thread-safe.
+     */
+    public final class Cursor {
+
+        private Cursor() { /* use cursor() */ }
+
+        private int index = 0;
+
+        /**
+         * @see LengthList#getIndexForPosition(int)
+         */
+        public int getIndexForPosition(int position) {
+            int last = size - 1;
+            if (last < 0 || position < 0)
+                return -1;
+            if (cumulative[index] > position) {
+                index = search(position, 0);
+                return index;
+            }
+            // look at the next few lengths before resorting to a search
+            for (int i = 0; i < 4; i++) {
+                if (index == last || cumulative[index + 1] > position)
+                    return index;
+                index++;
+            }
+            index = search(position, index);
+            return index;
+        }
+
+        /**
+         * @see LengthList#getOffsetForPosition(int)
+         */
+        public int getOffsetForPosition(int position) {
+            return position - getStartPosition(getIndexForPosition(position));
+        }
+    }
 
 }
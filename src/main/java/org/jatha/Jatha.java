@@ -26,13 +26,18 @@ package org.jatha;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.Reader;
@@ -95,7 +100,7 @@ import org.jatha.util.SymbolTable;
  */
 public class Jatha extends Object implements ActionListener
 {
-  private static boolean DEBUG = false;
+  private static final boolean DEBUG = false;
 
   // 1.2a 14 May 1997
   // 1.3a 03 Oct 2002
@@ -199,7 +204,7 @@ public class Jatha extends Object implements ActionListener
    * JATHA is a pointer to the Applet.
    */
 
-  public static int            APROPOS_TAB = 30;
+  public static final int      APROPOS_TAB = 30;
 
   // The '.' to represent a cons cell.
   public LispValue DOT;
@@ -495,7 +500,7 @@ public class Jatha extends Object implements ActionListener
   LispValue MAX_LIST_LENGTH;
   LispValue LOAD_VERBOSE;
 
-  static  long      MAX_LIST_LENGTH_VALUE = 50000;
+  static final long MAX_LIST_LENGTH_VALUE = 50000;
 
   boolean useGUI     = true;    // Whether or not to use GUI-based interaction.
   boolean useConsole = false;   // Whether or not to use command-line interaction.
@@ -675,7 +680,19 @@ public class Jatha extends Object implements ActionListener
 
   public void init()
   {
+    initCore();
 
+    // Load any files in the /init directory  (mh) 11 May 2005
+    loadInitFiles();
+
+    if (useGUI)
+      LISTENER  = new Listener(this, "Jatha LISP Listener", PACKAGE_SYMBOL.symbol_value().toString() + "> ");
+  }
+
+
+  // Everything init() does except loading the init files, which is what an image restores.
+  private void initCore()
+  {
     // EVAL must be before SYMTAB.
     EVAL    = new LispEvaluator(this);
 
@@ -735,12 +752,6 @@ public class Jatha extends Object implements ActionListener
 
     // Registers LISP primitive functions.  Should only be called once.
     COMPILER.init();
-
-    // Load any files in the /init directory  (mh) 11 May 2005
-    loadInitFiles();
-
-    if (useGUI)
-      LISTENER  = new Listener(this, "Jatha LISP Listener", PACKAGE_SYMBOL.symbol_value().toString() + "> ");
   }
 
 
@@ -766,6 +777,35 @@ public class Jatha extends Object implements ActionListener
     // gc();
   }
 
+  /**
+   * Writes the state of this interpreter to a stream as a compact binary image:
+   * its packages and symbols, with their values and functions, including everything
+   * defined by the init files and by any code evaluated since.  Restoring it with
+   * loadImage() is much quicker than init(), as no Lisp needs to be parsed or compiled.
+   * Values that are hash tables or Java objects can't be saved.
+   * @param out where to write the image; it is not closed.
+   * @throws IOException if the stream fails, or a value can't be saved.
+   */
+  public void saveImage(OutputStream out) throws IOException
+  {
+    JathaImage.write(this, new DataOutputStream(new BufferedOutputStream(out)));
+  }
+
+  /**
+   * Creates an interpreter from an image written by saveImage().  It is
+   * ready to evaluate expressions, without calling init() or start(), and
+   * uses neither the GUI nor the console.
+   * @param in the image; it is not closed.
+   * @throws IOException if the stream fails, or doesn't hold an image.
+   */
+  public static Jatha loadImage(InputStream in) throws IOException
+  {
+    Jatha lisp = new Jatha(false, false);
+    lisp.initCore();
+    JathaImage.read(lisp, new DataInputStream(new BufferedInputStream(in)));
+    return lisp;
+  }
+
   /**
    * Loads files in the /init directory in Jatha's jar file.
    * They must be named "01.lisp", "02.lisp", etc.  Numbers must
@@ -0,0 +1,588 @@
+package org.jatha;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jatha.compile.LispPrimitive;
+import org.jatha.dynatype.LispBignum;
+import org.jatha.dynatype.LispCharacter;
+import org.jatha.dynatype.LispCons;
+import org.jatha.dynatype.LispConstant;
+import org.jatha.dynatype.LispFunction;
+import org.jatha.dynatype.LispInteger;
+import org.jatha.dynatype.LispKeyword;
+import org.jatha.dynatype.LispMacro;
+import org.jatha.dynatype.LispNil;
+import org.jatha.dynatype.LispPackage;
+import org.jatha.dynatype.LispReal;
+import org.jatha.dynatype.LispString;
+import org.jatha.dynatype.LispSymbol;
+import org.jatha.dynatype.LispValue;
+import org.jatha.dynatype.StandardLispBignum;
+import org.jatha.dynatype.StandardLispCharacter;
+import org.jatha.dynatype.StandardLispCons;
+import org.jatha.dynatype.StandardLispConstant;
+import org.jatha.dynatype.StandardLispFunction;
+import org.jatha.dynatype.StandardLispInteger;
+import org.jatha.dynatype.StandardLispKeyword;
+import org.jatha.dynatype.StandardLispMacro;
+import org.jatha.dynatype.StandardLispPackage;
+import org.jatha.dynatype.StandardLispReal;
+import org.jatha.dynatype.StandardLispString;
+import org.jatha.dynatype.StandardLispSymbol;
+import org.jatha.machine.SECDop;
+import org.jatha.util.SymbolTable;
+
+
+/**
+ * Reads and writes the binary images of Jatha.saveImage() and Jatha.loadImage().
+ * <p>
+ * An image holds the packages and every symbol in them, with the symbols'
+ * values, functions (compiled code included), property lists and documentation.
+ * It is restored on top of an interpreter that has had everything but its init
+ * files done, so the primitives' Java objects are the new interpreter's own,
+ * and no Lisp is parsed or compiled.  Primitives are stored by class.
+ * </p><p>
+ * Values may be symbols, packages, conses, numbers, strings, characters,
+ * functions and macros; anything else (a hash table or a Java object, say)
+ * can't be saved.  Structure shared between values is shared again when the
+ * image is read.
+ * </p>
+ */
+final class JathaImage
+{
+  private static final int MAGIC   = 0x4A415448;  // "JATH"
+  private static final int VERSION = 1;
+
+  // Tags of the values
+  private static final int END       = 0;
+  private static final int REF       = 1;
+  private static final int UNBOUND   = 2;
+  private static final int SYMBOL    = 3;
+  private static final int PACKAGE   = 4;
+  private static final int CONS      = 5;
+  private static final int INTEGER   = 6;
+  private static final int BIGNUM    = 7;
+  private static final int REAL      = 8;
+  private static final int STRING    = 9;
+  private static final int CHARACTER = 10;
+  private static final int FUNCTION  = 11;
+  private static final int MACRO     = 12;
+  private static final int PRIMITIVE = 13;
+
+  // Kinds of symbol
+  private static final int PLAIN    = 0;
+  private static final int CONSTANT = 1;
+  private static final int KEYWORD  = 2;
+  private static final int NIL      = 3;
+
+  private JathaImage() { }
+
+  // The kind of symbol, so the reader makes the same class of symbol as was written.
+  private static int kind(Jatha lisp, LispValue symbol)
+  {
+    if (symbol == lisp.NIL)
+      return NIL;
+    else if (symbol instanceof LispKeyword)
+      return KEYWORD;
+    else if (symbol instanceof LispConstant)
+      return CONSTANT;
+    else
+      return PLAIN;
+  }
+
+
+  /* ------------------  WRITING   ------------------------------ */
+
+  static void write(Jatha lisp, DataOutputStream out) throws IOException
+  {
+    new Writer(lisp, out).write();
+  }
+
+  private static final class Writer
+  {
+    Writer(Jatha lisp, DataOutputStream out)
+    {
+      this.lisp = lisp;
+      this.out  = out;
+    }
+
+    private final Jatha lisp;
+    private final DataOutputStream out;
+
+    // Object ids, in the order the reader will meet them.  Primitives are keyed by class.
+    private final Map<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+    private final List<LispValue> symbols = new ArrayList<LispValue>();
+    private final List<LispPackage> packages = new ArrayList<LispPackage>();
+
+    void write() throws IOException
+    {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      for (LispValue p = lisp.packages; p != lisp.NIL; p = p.cdr())
+        packages.add((LispPackage)p.car());
+      writeCount(packages.size());
+      for (LispPackage pkg : packages)
+        out.writeUTF(pkg.getName().getValue());
+      for (LispPackage pkg : packages)
+      {
+        writeValue(((StandardLispPackage)pkg).getNicknames());
+        writeValue(((StandardLispPackage)pkg).getUses());
+      }
+
+      // First each package's own symbols, then the ones it imports from others.
+      for (LispPackage pkg : packages)
+        writeSymbols(pkg, true);
+      for (LispPackage pkg : packages)
+        writeSymbols(pkg, false);
+
+      // Writing a symbol's attributes can meet new (uninterned) symbols, which are then done in turn.
+      for (int i = 0; i < symbols.size(); i++)
+      {
+        LispValue symbol = symbols.get(i);
+        if (symbol == lisp.NIL)
+          continue;
+        writeValue(symbol);
+        writeAttributes(symbol);
+      }
+      out.writeByte(END);
+      out.flush();
+    }
+
+    private void writeSymbols(LispPackage pkg, boolean own) throws IOException
+    {
+      SymbolTable table = ((StandardLispPackage)pkg).getSymbolTable();
+      List<Map.Entry<String, LispValue>> entries = new ArrayList<Map.Entry<String, LispValue>>();
+      for (Map.Entry<String, LispValue> e : table.entrySet())
+        if ((e.getValue().symbol_package() == pkg) == own)
+          entries.add(e);
+      writeCount(entries.size());
+      for (Map.Entry<String, LispValue> e : entries)
+      {
+        out.writeUTF(e.getKey());
+        writeValue(e.getValue());
+      }
+    }
+
+    private void writeAttributes(LispValue symbol) throws IOException
+    {
+      StandardLispSymbol s = (StandardLispSymbol)symbol;
+      out.writeBoolean(s.specialP());
+      out.writeBoolean(s.externalP());
+      writeValue(s.boundp() == lisp.T ? s.symbol_value() : null);
+      writeValue(s.fboundp() == lisp.T ? s.symbol_function() : null);
+      writeValue(s.symbol_plist());
+      List<LispValue> types = new ArrayList<LispValue>(s.documentationTypes());
+      writeCount(types.size());
+      for (LispValue type : types)
+      {
+        writeValue(type);
+        writeValue(s.documentation(type));
+      }
+    }
+
+    private void writeValue(LispValue v) throws IOException
+    {
+      if (v == null)
+      {
+        out.writeByte(UNBOUND);
+        return;
+      }
+
+      Object key = (v instanceof LispPrimitive) ? v.getClass() : v;
+      Integer id = ids.get(key);
+      if (id != null)
+      {
+        out.writeByte(REF);
+        writeCount(id);
+      }
+      else if (v instanceof LispPrimitive)
+      {
+        register(key);
+        out.writeByte(PRIMITIVE);
+        out.writeUTF(v.getClass().getName());
+      }
+      else if (v instanceof LispSymbol || v instanceof LispNil)
+      {
+        register(v);
+        symbols.add(v);
+        out.writeByte(SYMBOL);
+        out.writeByte(kind(lisp, v));
+        out.writeUTF(((LispString)v.symbol_name()).getValue());
+        writeCount(packages.indexOf(v.symbol_package()) + 1);
+      }
+      else if (v instanceof LispCons)
+        writeList(v);
+      else if (v instanceof LispPackage)
+      {
+        int index = packages.indexOf(v);
+        if (index < 0)
+          throw new IOException("Can't save package " + v + ", which isn't in the package list");
+        out.writeByte(PACKAGE);
+        writeCount(index);
+      }
+      else if (v instanceof LispBignum)
+      {
+        out.writeByte(BIGNUM);
+        byte[] bytes = ((LispBignum)v).getBigIntegerValue().toByteArray();
+        writeCount(bytes.length);
+        out.write(bytes);
+      }
+      else if (v instanceof LispInteger)
+      {
+        out.writeByte(INTEGER);
+        out.writeLong(((LispInteger)v).getLongValue());
+      }
+      else if (v instanceof LispReal)
+      {
+        out.writeByte(REAL);
+        out.writeDouble(((LispReal)v).getDoubleValue());
+      }
+      else if (v instanceof LispString)
+      {
+        register(v);
+        out.writeByte(STRING);
+        out.writeUTF(((LispString)v).getValue());
+      }
+      else if (v instanceof LispCharacter)
+      {
+        out.writeByte(CHARACTER);
+        out.writeChar(((LispCharacter)v).getCharacterValue());
+      }
+      else if (v instanceof LispFunction && v.getClass() == StandardLispFunction.class
+               || v instanceof LispMacro && v.getClass() == StandardLispMacro.class)
+      {
+        register(v);
+        out.writeByte(v instanceof LispMacro ? MACRO : FUNCTION);
+        writeValue(((LispFunction)v).getSymbol());
+        writeValue(((LispFunction)v).getCode());
+      }
+      else
+        throw new IOException("Can't save a " + v.getClass().getName() + " in an image: " + v);
+    }
+
+    // A run of conses along their cdrs, as the number of conses, their cars, and the final cdr.
+    private void writeList(LispValue list) throws IOException
+    {
+      List<LispValue> run = new ArrayList<LispValue>();
+      LispValue tail = list;
+      while (tail instanceof LispCons && !ids.containsKey(tail))
+      {
+        register(tail);
+        run.add(tail);
+        tail = tail.cdr();
+      }
+      out.writeByte(CONS);
+      writeCount(run.size());
+      for (LispValue cons : run)
+        writeValue(cons.car());
+      writeValue(tail);
+    }
+
+    private void register(Object key)
+    {
+      ids.put(key, ids.size());
+    }
+
+    // Counts and ids, 7 bits at a time
+    private void writeCount(int n) throws IOException
+    {
+      while ((n & ~0x7F) != 0)
+      {
+        out.writeByte((n & 0x7F) | 0x80);
+        n >>>= 7;
+      }
+      out.writeByte(n);
+    }
+  }
+
+
+  /* ------------------  READING   ------------------------------ */
+
+  /**
+   * Reads an image into an interpreter which has been through initCore(),
+   * and nothing else.
+   */
+  static void read(Jatha lisp, DataInputStream in) throws IOException
+  {
+    new Reader(lisp, in).read();
+  }
+
+  private static final class Reader
+  {
+    Reader(Jatha lisp, DataInputStream in)
+    {
+      this.lisp = lisp;
+      this.in   = in;
+    }
+
+    private final Jatha lisp;
+    private final DataInputStream in;
+
+    private final List<Object> objects = new ArrayList<Object>();
+    private final List<LispPackage> packages = new ArrayList<LispPackage>();
+    // The new interpreter's own primitives and machine instructions, by class
+    private final Map<String, LispPrimitive> primitives = new HashMap<String, LispPrimitive>();
+
+    void read() throws IOException
+    {
+      if (in.readInt() != MAGIC)
+        throw new IOException("Not a Jatha image");
+      if (in.readInt() != VERSION)
+        throw new IOException("Jatha image is from a different version");
+      findPrimitives();
+
+      int packageCount = readCount();
+      for (int i = 0; i < packageCount; i++)
+      {
+        String name = in.readUTF();
+        LispValue pkg = lisp.findPackage(name);
+        if (pkg == lisp.NIL)
+          pkg = lisp.makePackage(lisp.makeString(name), lisp.NIL, lisp.NIL);
+        packages.add((LispPackage)pkg);
+      }
+      for (LispPackage pkg : packages)
+      {
+        pkg.setNicknames(readValue());
+        pkg.setUses(readValue());
+      }
+
+      for (LispPackage pkg : packages)
+        readSymbols(pkg, true);
+      for (LispPackage pkg : packages)
+        readSymbols(pkg, false);
+
+      while (true)
+      {
+        LispValue symbol = readValue();
+        if (symbol == null)
+          break;
+        readAttributes((StandardLispSymbol)symbol);
+      }
+    }
+
+    private void findPrimitives()
+    {
+      for (LispValue p = lisp.packages; p != lisp.NIL; p = p.cdr())
+      {
+        SymbolTable table = ((StandardLispPackage)p.car()).getSymbolTable();
+        for (LispValue symbol : table.values())
+        {
+          if (symbol == lisp.NIL || symbol.fboundp() != lisp.T)
+            continue;
+          LispValue code = symbol.symbol_function();
+          if (code.basic_consp() && code.second() instanceof LispPrimitive)
+            primitives.put(code.second().getClass().getName(), (LispPrimitive)code.second());
+        }
+      }
+      try {
+        for (Field f : lisp.MACHINE.getClass().getFields())
+          if (SECDop.class.isAssignableFrom(f.getType()))
+          {
+            Object op = f.get(lisp.MACHINE);
+            if (op != null)
+              primitives.put(op.getClass().getName(), (LispPrimitive)op);
+          }
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private void readSymbols(LispPackage pkg, boolean own) throws IOException
+    {
+      SymbolTable table = ((StandardLispPackage)pkg).getSymbolTable();
+      int count = readCount();
+      for (int i = 0; i < count; i++)
+      {
+        String key = in.readUTF();
+        int tag = in.readUnsignedByte();
+        LispValue symbol;
+        if (tag == SYMBOL && own)
+        {
+          // One of the package's own symbols: keep the one the interpreter already has, if it's the same kind.
+          int kind = in.readUnsignedByte();
+          String name = in.readUTF();
+          readCount();
+          LispValue existing = table.get(key);
+          if (existing != null && kind(lisp, existing) == kind && ((LispString)existing.symbol_name()).getValue().equals(name))
+            symbol = existing;
+          else
+          {
+            symbol = makeSymbol(kind, name);
+            symbol.setPackage(pkg);
+          }
+          objects.add(symbol);
+        }
+        else
+          symbol = readValue(tag);
+        if (table.get(key) != symbol)
+          table.put(key, symbol);
+      }
+    }
+
+    private void readAttributes(StandardLispSymbol s) throws IOException
+    {
+      s.set_special(in.readBoolean());
+      s.setExternal(in.readBoolean());
+      LispValue value = readValue();
+      if (value != null && !(s.boundp() == lisp.T && s.symbol_value() == value))
+        s.setf_symbol_value(value);
+      LispValue function = readValue();
+      if (function != null)
+        s.setf_symbol_function(function);
+      s.setf_symbol_plist(readValue());
+      int docs = readCount();
+      for (int i = 0; i < docs; i++)
+        s.setf_documentation(readValue(), readValue());
+    }
+
+    // Returns null for UNBOUND and END.
+    private LispValue readValue() throws IOException
+    {
+      return readValue(in.readUnsignedByte());
+    }
+
+    private LispValue readValue(int tag) throws IOException
+    {
+      switch (tag)
+      {
+        case END:
+        case UNBOUND:
+          return null;
+
+        case REF:
+          return (LispValue)objects.get(readCount());
+
+        case PRIMITIVE:
+        {
+          String className = in.readUTF();
+          LispPrimitive primitive = primitives.get(className);
+          if (primitive == null)
+          {
+            primitive = makePrimitive(className);
+            primitives.put(className, primitive);
+          }
+          objects.add(primitive);
+          return primitive;
+        }
+
+        case SYMBOL:
+        {
+          int kind = in.readUnsignedByte();
+          LispValue symbol = makeSymbol(kind, in.readUTF());
+          int pkg = readCount();
+          if (pkg > 0)
+            symbol.setPackage(packages.get(pkg - 1));
+          objects.add(symbol);
+          return symbol;
+        }
+
+        case PACKAGE:
+          return packages.get(readCount());
+
+        case CONS:
+        {
+          int n = readCount();
+          LispValue[] run = new LispValue[n];
+          for (int i = 0; i < n; i++)
+          {
+            run[i] = new StandardLispCons(lisp, lisp.NIL, lisp.NIL);
+            objects.add(run[i]);
+            if (i > 0)
+              run[i - 1].rplacd(run[i]);
+          }
+          for (int i = 0; i < n; i++)
+            run[i].rplaca(readValue());
+          run[n - 1].rplacd(readValue());
+          return run[0];
+        }
+
+        case INTEGER:
+          return new StandardLispInteger(lisp, in.readLong());
+
+        case BIGNUM:
+        {
+          byte[] bytes = new byte[readCount()];
+          in.readFully(bytes);
+          return new StandardLispBignum(lisp, new BigInteger(bytes));
+        }
+
+        case REAL:
+          return new StandardLispReal(lisp, in.readDouble());
+
+        case STRING:
+        {
+          LispValue s = new StandardLispString(lisp, in.readUTF());
+          objects.add(s);
+          return s;
+        }
+
+        case CHARACTER:
+          return new StandardLispCharacter(lisp, in.readChar());
+
+        case FUNCTION:
+        case MACRO:
+        {
+          // the function can't be made until its parts are read, so keep its place
+          int id = objects.size();
+          objects.add(null);
+          LispValue symbol = readValue();
+          LispValue code   = readValue();
+          LispValue f = (tag == MACRO) ? new StandardLispMacro(lisp, symbol, code)
+                                       : new StandardLispFunction(lisp, symbol, code);
+          objects.set(id, f);
+          return f;
+        }
+
+        default:
+          throw new IOException("Corrupt Jatha image: unknown tag " + tag);
+      }
+    }
+
+    private LispValue makeSymbol(int kind, String name) throws IOException
+    {
+      switch (kind)
+      {
+        case NIL:      return lisp.NIL;
+        case KEYWORD:  return new StandardLispKeyword(lisp, name);
+        case CONSTANT: return new StandardLispConstant(lisp, name);
+        case PLAIN:    return new StandardLispSymbol(lisp, name);
+        default:
+          throw new IOException("Corrupt Jatha image: unknown symbol kind " + kind);
+      }
+    }
+
+    private LispPrimitive makePrimitive(String className) throws IOException
+    {
+      try {
+        Class<?> c = Class.forName(className);
+        if (!LispPrimitive.class.isAssignableFrom(c))
+          throw new IOException("Corrupt Jatha image: " + className + " isn't a primitive");
+        return (LispPrimitive)c.getConstructor(Jatha.class).newInstance(lisp);
+      } catch (ReflectiveOperationException e) {
+        throw new IOException("Can't make primitive " + className + " from Jatha image", e);
+      }
+    }
+
+    private int readCount() throws IOException
+    {
+      int n = 0;
+      for (int shift = 0; ; shift += 7)
+      {
+        int b = in.readUnsignedByte();
+        n |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0)
+          return n;
+      }
+    }
+  }
+}
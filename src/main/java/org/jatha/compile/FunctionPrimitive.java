@@ -35,7 +35,7 @@ import org.jatha.machine.*;
  */
 public class FunctionPrimitive extends LispPrimitive
 {
-  public static boolean DEBUG = false;
+  public static final boolean DEBUG = false;
 
 
   public FunctionPrimitive(Jatha lisp)
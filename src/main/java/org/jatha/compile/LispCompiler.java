@@ -55,7 +55,7 @@ import org.jatha.machine.*;
 public class LispCompiler
 {
   // Set this to true to produce debugging output during compilation.
-  static boolean DEBUG = false;
+  static final boolean DEBUG = false;
 
   // These are special forms that get expanded in the compiler
   LispValue AND;
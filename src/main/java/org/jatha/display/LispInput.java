@@ -51,7 +51,7 @@ import java.util.ArrayList;
  */
 class LispInput extends JPanel implements Runnable, ActionListener, KeyListener
 {
-  public static boolean DEBUG = false;
+  public static final boolean DEBUG = false;
 
   /* ------------------  PRIVATE variables   ------------------------------ */
   protected JTextArea   f_inputArea      = null;
@@ -40,7 +40,7 @@ public class StandardLispCons extends StandardLispConsOrNil implements LispCons
 {
   public static final long serialVersionUID = 1L;
   
-  public static boolean DEBUG = false;
+  public static final boolean DEBUG = false;
   
   protected LispValue  carCell;
   protected LispValue  cdrCell;
@@ -26,6 +26,7 @@ package org.jatha.dynatype;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
 
 import java.io.*;
 
@@ -66,7 +67,7 @@ public class StandardLispSymbol extends StandardLispAtom implements LispSymbol
 
   protected  boolean    f_mixedCase;          // For mixed-case symbols
 
-  protected Map f_documentation;
+  protected Map<LispValue, LispValue> f_documentation;
 
 /* ------------------  CONSTRUCTORS   ------------------------------ */
 
@@ -97,7 +98,7 @@ public class StandardLispSymbol extends StandardLispAtom implements LispSymbol
                                                "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ:*/+-?!.%$<>=_")
             < ((LispInteger)symbolNameString.length()).getLongValue());
 
-    f_documentation = new HashMap();
+    f_documentation = new HashMap<LispValue, LispValue>();
   }
 
 
@@ -333,7 +334,7 @@ public class StandardLispSymbol extends StandardLispAtom implements LispSymbol
   public LispValue setf_symbol_function(LispValue newCode)
   {
     // function or macro
-    if (newCode.basic_functionp())
+    if (newCode.basic_functionp() || newCode.basic_macrop())
     {
       f_function = newCode;
       return f_function;
@@ -430,10 +431,17 @@ public class StandardLispSymbol extends StandardLispAtom implements LispSymbol
         if(!(type instanceof LispSymbol)) {
             throw new LispValueNotASymbolException("The second argument to DOCUMENTATION");
         }
-        final LispValue val = (LispValue)f_documentation.get(type);
+        final LispValue val = f_documentation.get(type);
         return (val == null) ? f_lisp.NIL : val;
     }
 
+    /**
+     * Returns the types (symbols) for which this symbol has documentation.
+     */
+    public Set<LispValue> documentationTypes() {
+        return f_documentation.keySet();
+    }
+
     public LispValue setf_documentation(final LispValue type, final LispValue value) {
         if(!(type instanceof LispSymbol)) {
             throw new LispValueNotASymbolException("The second argument to SETF-DOCUMENTATION");
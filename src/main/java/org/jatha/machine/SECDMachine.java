@@ -50,7 +50,7 @@ public class SECDMachine    // extends Abstract Machine !
 
   Jatha f_lisp = null;
 
-  private static boolean DEBUG = false;
+  private static final boolean DEBUG = false;
 
   // ------  Registers  --------------
 
@@ -97,8 +97,6 @@ public class LispParser
 
   private int f_caseSensitivity = UPCASE;  // default LISP behavior.
 
-  private static LispParser f_myParser = null;
-
 
   private Jatha f_lisp = null;
 
@@ -1124,14 +1122,12 @@ public class LispParser
   {
     LispValue result = lisp.NIL;
 
-    if (f_myParser == null)
-      f_myParser = new LispParser(lisp, input);
-    else
-      f_myParser.setInputString(input);
+    // A parser of its own, as a shared one would intern symbols in whichever interpreter created it.
+    LispParser parser = new LispParser(lisp, input);
 
     try {
       while (true)
-        result = f_myParser.read();
+        result = parser.read();
 
     } catch (EOFException eofe) {
       if (eofe.getMessage().toLowerCase().startsWith("premature"))
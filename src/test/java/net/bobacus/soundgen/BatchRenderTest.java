@@ -0,0 +1,106 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import net.bobacus.soundgen.sampler.SampleChunk;
+import net.bobacus.soundgen.sampler.Sampler;
+import net.bobacus.soundgen.sampler.SamplerParams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static net.bobacus.soundgen.TestSupport.write;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BatchRenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void directory_gives_its_music_files_in_order() throws Exception {
+        File dir = folder.newFolder("tunes");
+        write(new File(dir, "b.txt"), "");
+        write(new File(dir, "a.txt"), "");
+        write(new File(dir, "notes.md"), "");
+        assertThat(BatchRender.findTunes(dir), is(Arrays.asList(new File(dir, "a.txt"), new File(dir, "b.txt"))));
+    }
+
+    @Test
+    public void manifest_lists_files_relative_to_itself() throws Exception {
+        File manifest = folder.newFile("batch.list");
+        write(manifest, "one.txt\n\n# not this one\n  sub/two.txt\n");
+        File dir = folder.getRoot().getAbsoluteFile();
+        assertThat(BatchRender.findTunes(manifest),
+                is(Arrays.asList(new File(dir, "one.txt"), new File(dir, "sub/two.txt"))));
+    }
+
+    @Test
+    public void tunes_are_rendered_and_failures_counted() throws Exception {
+        File dir = folder.newFolder("tunes");
+        File out = folder.newFolder("out");
+        for (int i = 0; i < 4; i++)
+            write(new File(dir, "tune" + i + ".txt"), "(list (list (list 1 " + (220 * (i + 1)) + " 0.5)))\n.\n");
+        write(new File(dir, "broken.txt"), "(+ 1 2)\n");
+        List<File> tunes = BatchRender.findTunes(dir);
+
+        assertThat("failures", new BatchRender(out, 3).run(tunes), is(1));
+        assertThat("broken", new File(out, "broken.wav").exists(), is(false));
+        for (int i = 0; i < 4; i++) {
+            try (AudioInputStream in = AudioSystem.getAudioInputStream(new File(out, "tune" + i + ".wav"))) {
+                assertThat("frames", in.getFrameLength(), is(22050L));
+            }
+        }
+    }
+
+    @Test
+    public void tunes_with_the_same_name_do_not_share_an_output_file() throws Exception {
+        File a = folder.newFolder("a");
+        File b = folder.newFolder("b");
+        File out = folder.newFolder("out");
+        write(new File(a, "x.txt"), "(list (list (list 1 220 0.5)))\n.\n");
+        write(new File(b, "x.txt"), "(list (list (list 1 220 1.0)))\n.\n");
+        List<File> tunes = BatchRender.findTunes(a);
+        tunes.addAll(BatchRender.findTunes(b));
+
+        assertThat("failures", new BatchRender(out, 2).run(tunes), is(1));
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(new File(out, "x.wav"))) {
+            assertThat("first tune's frames", in.getFrameLength(), is(22050L));
+        }
+    }
+
+    @Test
+    public void output_is_deleted_when_rendering_fails() throws Exception {
+        File file = new File(folder.getRoot(), "broken.wav");
+        Sampler failing = new Sampler() {
+            public Iterator<SampleChunk> getSamples(int duration, int start) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void getSamples(double[] buffer, int offset, int duration, int start) {
+                if (start > 0)
+                    throw new IllegalStateException("failed part way through");
+                Arrays.fill(buffer, offset, offset + duration, 0);
+            }
+        };
+        try {
+            new BatchRender(folder.getRoot(), 1).write(Collections.singletonList(failing), null, 20000,
+                    new SamplerParams(8000, 16, 1), file);
+            fail("no exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("failed part way through"));
+        }
+        assertThat("file left", file.exists(), is(false));
+    }
+
+}
@@ -0,0 +1,73 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+
+import org.jatha.Jatha;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static net.bobacus.soundgen.TestSupport.intValue;
+import static net.bobacus.soundgen.TestSupport.write;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class InterpreterImageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String PRELUDE = "(defun sq (x) (* x x))\n.\n(defmacro twice (x) `(+ ,x ,x))\n.\n"
+            + "(defvar *big* 123456789012345678901234567890)\n.\n";
+
+    @Test
+    public void restored_interpreter_has_the_prelude_and_init_files() throws Exception {
+        File prelude = folder.newFile("prelude.txt");
+        write(prelude, PRELUDE);
+        File image = new File(folder.getRoot(), "prelude.img");
+        Jatha cold = InterpreterImage.start(prelude, image);
+        assertThat("image written", image.isFile(), is(true));
+
+        Jatha restored = InterpreterImage.start(prelude, image);
+        for (String e : new String[]{"(sq 7)", "(twice (sq 3))", "(- *big* 123456789012345678901234567000)",
+                "(let ((x 3)) (dotimes (i 3) (setq x (+ x i))) x)"}) {
+            assertThat(e, intValue(restored, e), is(intValue(cold, e)));
+        }
+    }
+
+    @Test
+    public void image_is_used_while_it_is_newer_than_the_prelude() throws Exception {
+        File prelude = folder.newFile("prelude.txt");
+        write(prelude, "(defun f () 1)\n.\n");
+        File image = new File(folder.getRoot(), "prelude.img");
+        InterpreterImage.start(prelude, image);
+
+        // the image is only restored if it is up to date, so this definition only shows once it is out of date
+        write(prelude, "(defun f () 2)\n.\n");
+        assertThat(prelude.setLastModified(image.lastModified() - 10000), is(true));
+        assertThat("restored", intValue(InterpreterImage.start(prelude, image), "(f)"), is(1));
+
+        assertThat(prelude.setLastModified(image.lastModified() + 10000), is(true));
+        assertThat("rebuilt", intValue(InterpreterImage.start(prelude, image), "(f)"), is(2));
+        assertThat("restored again", intValue(InterpreterImage.start(prelude, image), "(f)"), is(2));
+    }
+
+    @Test
+    public void unreadable_image_is_replaced() throws Exception {
+        File image = folder.newFile("prelude.img");
+        write(image, "not an image");
+        assertThat(intValue(InterpreterImage.start(null, image), "(+ 1 2)"), is(3));
+        assertThat("restored", intValue(InterpreterImage.start(null, image), "(+ 1 2)"), is(3));
+        assertThat("rewritten", image.length() > 1000, is(true));
+    }
+
+    @Test
+    public void prelude_that_cannot_be_saved_still_starts() throws Exception {
+        File prelude = folder.newFile("prelude.txt");
+        write(prelude, "(defvar *table* (make-hash-table))\n.\n(defun f () 4)\n.\n");
+        File image = new File(folder.getRoot(), "prelude.img");
+        assertThat(intValue(InterpreterImage.start(prelude, image), "(f)"), is(4));
+        assertThat("image written", image.exists(), is(false));
+    }
+
+}
@@ -0,0 +1,80 @@
+package net.bobacus.soundgen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jatha.Jatha;
+import org.junit.Test;
+
+import static net.bobacus.soundgen.TestSupport.intValue;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class InterpreterPoolTest {
+
+    private static Jatha template() {
+        Jatha lisp = new Jatha(false, false);
+        lisp.init();
+        lisp.start();
+        lisp.eval("(defvar *base* 100)");
+        return lisp;
+    }
+
+    @Test
+    public void interpreters_are_copies_of_the_template() throws Exception {
+        try (InterpreterPool pool = new InterpreterPool(template(), 2)) {
+            Jatha lisp = pool.acquire();
+            assertThat(intValue(lisp, "(+ *base* 1)"), is(101));
+            pool.release(lisp);
+        }
+    }
+
+    @Test
+    public void changes_are_not_seen_by_the_next_interpreter() throws Exception {
+        try (InterpreterPool pool = new InterpreterPool(template(), 1)) {
+            Jatha first = pool.acquire();
+            first.eval("(setq *base* 5)");
+            first.eval("(defun f () 1)");
+            pool.release(first);
+
+            Jatha second = pool.acquire();
+            assertThat(intValue(second, "*base*"), is(100));
+            assertThat("f defined", second.eval("(fboundp 'f)"), is(second.NIL));
+            pool.release(second);
+        }
+    }
+
+    @Test
+    public void interpreters_evaluate_in_parallel_without_interfering() throws Exception {
+        int tasks = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (InterpreterPool pool = new InterpreterPool(template(), 4)) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < tasks; t++) {
+                int n = t;
+                results.add(executor.submit(() -> {
+                    Jatha lisp = pool.acquire();
+                    try {
+                        // every task defines the same names differently
+                        lisp.eval("(defun g (x) (+ x " + n + "))");
+                        lisp.eval("(setq *base* (g *base*))");
+                        int sum = 0;
+                        for (int i = 0; i < 20; i++)
+                            sum = intValue(lisp, "(g *base*)");
+                        return sum;
+                    } finally {
+                        pool.release(lisp);
+                    }
+                }));
+            }
+            for (int t = 0; t < tasks; t++)
+                assertThat("task " + t, results.get(t).get(), is(100 + 2 * t));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+package net.bobacus.soundgen;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.bobacus.soundgen.channel.Channel;
+import net.bobacus.soundgen.effect.EffectChain;
+import net.bobacus.soundgen.effect.FeedbackDelay;
+import net.bobacus.soundgen.effect.Gain;
+import net.bobacus.soundgen.effect.SoftClip;
+import net.bobacus.soundgen.metrics.RenderMetrics;
+import net.bobacus.soundgen.sampler.ChannelSampler;
+import net.bobacus.soundgen.sampler.EffectSampler;
+import net.bobacus.soundgen.sampler.SampleChunk;
+import net.bobacus.soundgen.sampler.Sampler;
+import net.bobacus.soundgen.sampler.SamplerParams;
+import net.bobacus.soundgen.synth.Instruments;
+import net.bobacus.soundgen.synth.Sound;
+import net.bobacus.soundgen.synth.Synth;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MultiChannelPlayerTest {
+
+    private static final SamplerParams params = new SamplerParams(8000, 16, 1);
+
+    static class CapturingOutput implements AudioOutput {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        boolean closed = false;
+        boolean aborted = false;
+
+        public void write(byte[] data, int offset, int length) {
+            bytes.write(data, offset, length);
+        }
+
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+    }
+
+    private static Channel channel(Synth instrument, double... pitches) {
+        List<Sound> sounds = new ArrayList<>();
+        for (double p : pitches) {
+            sounds.add(new Sound(instrument.getPitch(p), 0.3));
+        }
+        return new Channel(sounds.iterator());
+    }
+
+    private static byte[] render(int threads, List<Channel> channels, int duration) {
+        return render(threads, channels, duration, params);
+    }
+
+    private static byte[] render(int threads, List<Channel> channels, int duration, SamplerParams params) {
+        List<ChannelSampler> samplers = new ArrayList<>();
+        for (Channel c : channels) {
+            samplers.add(new ChannelSampler(c, params));
+        }
+        CapturingOutput output = new CapturingOutput();
+        new MultiChannelPlayer(threads).play(samplers, duration, params, output);
+        assertThat("closed", output.closed, is(true));
+        return output.bytes.toByteArray();
+    }
+
+    @Test
+    public void serial_and_parallel_output_are_identical() {
+        List<Channel> channels = new ArrayList<>();
+        channels.add(channel(Instruments.glock, 440, 523.251, 659.255, 880, 440, 523.251, 659.255, 880));
+        channels.add(channel(Instruments.clarinetTongued, 261.6, 293.7, 329.6, 349.2, 392, 440, 493.9, 523.3));
+        channels.add(channel(Instruments.bassSlide, 110, 110, 146.8, 146.8));
+        channels.add(channel(Instruments.bass, 55, 73.4, 82.4, 98));
+        int duration = (int) (2.4 * params.getSampleRate());
+
+        byte[] serial = render(1, channels, duration);
+        assertThat("length", serial.length, is(duration * 2));
+        assertArrayEquals("2 threads", serial, render(2, channels, duration));
+        assertArrayEquals("4 threads", serial, render(4, channels, duration));
+    }
+
+    @Test
+    public void unknown_duration_plays_to_end_of_first_channel() {
+        List<Channel> channels = new ArrayList<>();
+        channels.add(channel(Instruments.glock, 440, 523.251, 659.255, 880, 440, 523.251, 659.255));
+        channels.add(channel(Instruments.bass, 55, 73.4, 82.4, 98, 55, 73.4, 82.4, 98, 55, 73.4));
+        int duration = 7 * (int) (0.3 * params.getSampleRate());
+
+        byte[] known = render(1, channels, duration);
+        assertArrayEquals("1 thread", known, render(1, channels, -1));
+        assertArrayEquals("2 threads", known, render(2, channels, -1));
+    }
+
+    @Test
+    public void hard_panned_channels_fill_their_own_sides() {
+        List<Channel> channels = new ArrayList<>();
+        channels.add(channel(Instruments.glock, 440, 523.251, 659.255, 880));
+        channels.add(channel(Instruments.bass, 55, 73.4, 82.4, 98));
+        int duration = (int) (1.2 * params.getSampleRate());
+        channels.get(0).setPan(-1);
+        channels.get(1).setPan(1);
+        byte[] stereo = render(2, channels, duration, new SamplerParams(8000, 16, 2));
+        assertThat("length", stereo.length, is(duration * 4));
+
+        // each side matches a mono mix with the other channel silenced
+        for (int side = 0; side < 2; side++) {
+            channels.get(side).setGain(1);
+            channels.get(1 - side).setGain(0);
+            byte[] mono = render(1, channels, duration);
+            byte[] channel = new byte[mono.length];
+            for (int i = 0; i < duration; i++) {
+                channel[i * 2] = stereo[i * 4 + side * 2];
+                channel[i * 2 + 1] = stereo[i * 4 + side * 2 + 1];
+            }
+            assertArrayEquals("side " + side, mono, channel);
+        }
+    }
+
+    @Test
+    public void pan_keeps_constant_power() {
+        double[] centre = MultiChannelPlayer.getWeights(0, 1, 2);
+        assertEquals(Math.sqrt(0.5), centre[0], 1e-12);
+        assertEquals(Math.sqrt(0.5), centre[1], 1e-12);
+        double[] right = MultiChannelPlayer.getWeights(0.5, 2, 2);
+        assertEquals(4, right[0] * right[0] + right[1] * right[1], 1e-12);
+        assertThat(MultiChannelPlayer.getWeights(0, 0.5, 3), is(new double[]{0, 0.5, 0}));
+        assertThat(MultiChannelPlayer.getWeights(0.3, 0.5, 1), is(new double[]{0.5}));
+    }
+
+    @Test
+    public void small_blocks_give_the_same_output() {
+        List<Channel> channels = new ArrayList<>();
+        channels.add(channel(Instruments.glock, 440, 523.251, 659.255, 880));
+        channels.add(channel(Instruments.bass, 55, 73.4, 82.4, 98));
+        int duration = (int) (1.2 * params.getSampleRate());
+        byte[] expected = render(1, channels, duration);
+
+        for (int threads : new int[]{1, 2}) {
+            List<ChannelSampler> samplers = new ArrayList<>();
+            for (Channel c : channels) {
+                samplers.add(new ChannelSampler(c, params));
+            }
+            CapturingOutput output = new CapturingOutput();
+            MultiChannelPlayer player = new MultiChannelPlayer(threads, RenderMetrics.NONE, false, 40);
+            player.play(samplers, duration, params, output);
+            byte[] actual = output.bytes.toByteArray();
+            assertThat("length", actual.length, is(expected.length));
+            for (int i = 0; i < expected.length; i += 2) {
+                int e = (expected[i] & 0xff) | expected[i + 1] << 8;
+                int a = (actual[i] & 0xff) | actual[i + 1] << 8;
+                assertTrue("sample " + i / 2, Math.abs(e - a) <= 1);
+            }
+            assertThat("blocks", player.getBlocks(), is((long) (duration + 39) / 40));
+        }
+    }
+
+    @Test
+    public void slow_blocks_are_deadline_misses() {
+        // 10ms blocks, of which every other one takes 20ms to render
+        int blockSize = params.getSampleRate() / 100;
+        Sampler slow = new Sampler() {
+            public Iterator<SampleChunk> getSamples(int duration, int start) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void getSamples(double[] buffer, int offset, int duration, int start) {
+                Arrays.fill(buffer, offset, offset + duration, 0);
+                if (start / blockSize % 2 == 1) {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+        };
+        MultiChannelPlayer player = new MultiChannelPlayer(1, RenderMetrics.NONE, false, blockSize);
+        player.play(Collections.singletonList(slow), blockSize * 6, params, new CapturingOutput());
+        assertThat("blocks", player.getBlocks(), is(6L));
+        // the slow blocks always miss, and a loaded machine may make the others miss too
+        assertTrue("misses", player.getDeadlineMisses() >= 3);
+        assertTrue("max", player.getMaxBlockNanos() >= 20_000_000);
+    }
+
+    // a sampler which gives the same value up to its length, and then silence
+    private static class ConstantSampler implements Sampler {
+
+        ConstantSampler(double value, int length) {
+            this.value = value;
+            this.length = length;
+        }
+
+        private final double value;
+        private final int length;
+
+        public Iterator<SampleChunk> getSamples(int duration, int start) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getSamples(double[] buffer, int offset, int duration, int start) {
+            for (int i = 0; i < duration; i++) {
+                buffer[offset + i] = (start + i < length ? value : 0);
+            }
+        }
+
+        @Override
+        public int getLength() {
+            return length;
+        }
+    }
+
+    @Test
+    public void replaced_channels_take_over_at_the_next_block() {
+        int blockSize = 100;
+        MultiChannelPlayer player = new MultiChannelPlayer(1, RenderMetrics.NONE, false, blockSize);
+        List<Sampler> replacement = Collections.singletonList(new ConstantSampler(0.5, 1000));
+        Sampler first = new ConstantSampler(0.25, 10000) {
+            @Override
+            public void getSamples(double[] buffer, int offset, int duration, int start) {
+                super.getSamples(buffer, offset, duration, start);
+                if (start == 2 * blockSize)
+                    player.replace(replacement, params);
+            }
+        };
+        CapturingOutput output = new CapturingOutput();
+        player.play(Collections.singletonList(first), -1, params, output);
+        short[] samples = new short[output.bytes.size() / 2];
+        ByteBuffer.wrap(output.bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        // the replacement carries on from the same position, and the play ends where it does
+        assertThat("length", samples.length, is(1000));
+        assertThat("before", samples[3 * blockSize - 1], is((short) 8192));
+        assertThat("after", samples[3 * blockSize], is((short) 16384));
+        assertThat("last", samples[999], is((short) 16384));
+    }
+
+    @Test
+    public void channel_effects_come_before_the_mix_and_master_effects_after() {
+        EffectChain half = new EffectChain(Collections.singletonList(new Gain(0.5)), 100);
+        List<Sampler> samplers = Arrays.asList(new EffectSampler(new ConstantSampler(0.5, 1000), half),
+                new ConstantSampler(0.5, 1000));
+        EffectChain[] master = {new EffectChain(Arrays.asList(new Gain(2), new SoftClip(1)), 100)};
+        CapturingOutput output = new CapturingOutput();
+        new MultiChannelPlayer(2).play(samplers, master, 1000, params, output);
+        short[] samples = new short[output.bytes.size() / 2];
+        ByteBuffer.wrap(output.bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        // the average of 0.25 and 0.5, doubled to 0.75, and soft clipped
+        double expected = 1.5 * 0.75 - 0.5 * 0.75 * 0.75 * 0.75;
+        assertThat("length", samples.length, is(1000));
+        assertEquals("first", expected * 32767, samples[0], 1);
+        assertEquals("last", expected * 32767, samples[999], 1);
+    }
+
+    @Test
+    public void unknown_duration_plays_on_until_the_effects_die_away() {
+        EffectChain echo = new EffectChain(Collections.singletonList(new FeedbackDelay(100, 0.5, 1)), 100);
+        EffectChain[] master = {new EffectChain(Collections.singletonList(new FeedbackDelay(50, 0, 1)), 100)};
+        List<Sampler> samplers = Collections.singletonList(new EffectSampler(new ConstantSampler(0.5, 1000), echo));
+        CapturingOutput output = new CapturingOutput();
+        new MultiChannelPlayer(1, RenderMetrics.NONE, false, 128).play(samplers, master, -1, params, output);
+        int tail = echo.getTailLength() + master[0].getTailLength();
+        assertThat("tail", tail, is(100 + 10 * 100 + 50));
+        assertThat("length", output.bytes.size() / 2, is(1000 + tail));
+    }
+
+    @Test
+    public void failed_play_aborts_the_output() {
+        Sampler failing = new ConstantSampler(0.5, 1000) {
+            @Override
+            public void getSamples(double[] buffer, int offset, int duration, int start) {
+                if (start > 0)
+                    throw new IllegalStateException("failed part way through");
+                super.getSamples(buffer, offset, duration, start);
+            }
+        };
+        CapturingOutput output = new CapturingOutput();
+        try {
+            new MultiChannelPlayer(1, RenderMetrics.NONE, false, 100).play(Collections.singletonList(failing), 1000,
+                    params, output);
+            fail("no exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("failed part way through"));
+        }
+        assertThat("aborted", output.aborted, is(true));
+        assertThat("closed", output.closed, is(false));
+    }
+
+    @Test
+    public void no_channels_give_silence() {
+        for (SamplerParams p : new SamplerParams[]{params, new SamplerParams(8000, 16, 1, true)}) {
+            CapturingOutput output = new CapturingOutput();
+            new MultiChannelPlayer().play(Collections.<Sampler>emptyList(), 100, p, output);
+            assertArrayEquals(new byte[200], output.bytes.toByteArray());
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package net.bobacus.soundgen;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jatha.Jatha;
+import org.junit.Test;
+
+import net.bobacus.soundgen.effect.Effect;
+import net.bobacus.soundgen.effect.Gain;
+import net.bobacus.soundgen.effect.SoftClip;
+import net.bobacus.soundgen.sampler.Sampler;
+import net.bobacus.soundgen.sampler.SamplerParams;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MusicTest {
+
+    private static final SamplerParams params = new SamplerParams(8000, 16, 2);
+    private static final String NOTES = "((1 440 0.1) (1 660 0.1))";
+
+    private static Music music(String channels) {
+        Jatha lisp = new Jatha(false, false);
+        lisp.init();
+        lisp.start();
+        return new Music(lisp, lisp.eval("'" + channels), 0, 0);
+    }
+
+    private static double[] render(Sampler sampler) {
+        double[] b = new double[(int) (0.2 * params.getSampleRate())];
+        sampler.getSamples(b, 0, b.length, 0);
+        return b;
+    }
+
+    // the dry channel, run through the effects
+    private static double[] expected(Effect... effects) {
+        double[] b = render(music("(" + NOTES + ")").getSamplers(params).get(0));
+        for (Effect effect : effects) {
+            effect.process(b, 0, b.length);
+        }
+        return b;
+    }
+
+    @Test
+    public void channel_effects_are_applied_in_the_order_given() {
+        List<? extends Sampler> samplers = music("((effects (gain 3) (clip 1) " + NOTES + "))").getSamplers(params);
+        assertArrayEquals(expected(new Gain(3), new SoftClip(1)), render(samplers.get(0)), 0);
+    }
+
+    @Test
+    public void nested_effects_are_applied_innermost_first_around_a_mix() {
+        Music music = music("((effects (clip 1) (mix 0.5 0.25 (effects (gain 3) " + NOTES + "))))");
+        Sampler sampler = music.getSamplers(params).get(0);
+        assertThat("pan", sampler.getPan(), is(0.5));
+        assertThat("gain", sampler.getGain(), is(0.25));
+        assertArrayEquals(expected(new Gain(3), new SoftClip(1)), render(sampler), 0);
+        assertThat("master", music.getMasterEffects(params), is(nullValue()));
+    }
+
+    @Test
+    public void effects_around_the_channels_are_on_the_mix() {
+        Music music = music("(effects (gain 0.5) (reverb 0.5 0.5 0.3) (" + NOTES + " " + NOTES + "))");
+        List<? extends Sampler> samplers = music.getSamplers(params);
+        assertThat("channels", samplers.size(), is(2));
+        assertArrayEquals("dry", expected(), render(samplers.get(1)), 0);
+        assertThat("one chain per output", music.getMasterEffects(params).length, is(2));
+        // the tune goes on for the reverberation
+        assertThat("length", music.getLength(params) > (int) (0.2 * params.getSampleRate()), is(true));
+    }
+
+    @Test
+    public void bass_slide_is_an_instrument() {
+        double[] bass = render(music("(((6 110 0.2)))").getSamplers(params).get(0));
+        double[] slide = render(music("(((8 110 0.2)))").getSamplers(params).get(0));
+        assertThat("slides", Arrays.equals(bass, slide), is(false));
+    }
+
+    private static void assertRejected(String channels, String message) {
+        try {
+            music(channels);
+            fail("no exception for " + channels);
+        } catch (SoundGenException e) {
+            assertThat(e.getMessage(), containsString(message));
+        }
+    }
+
+    @Test
+    public void malformed_effects_are_rejected_with_the_form() {
+        assertRejected("((effects gain " + NOTES + "))", "Not an effect: GAIN");
+        assertRejected("((effects (gain loud) " + NOTES + "))", "Not a number: LOUD");
+        assertRejected("((effects (flanger 1) " + NOTES + "))", "No such effect: FLANGER");
+        assertRejected("((effects (delay 0.1 2 0.5) " + NOTES + "))", "(DELAY 0.1 2 0.5)");
+        assertRejected("((effects (lowpass 0) " + NOTES + "))", "(LOWPASS 0)");
+        assertRejected("((effects (lowpass -100) " + NOTES + "))", "(LOWPASS -100)");
+        assertRejected("((effects))", "Nothing for the effects to apply to");
+    }
+
+}
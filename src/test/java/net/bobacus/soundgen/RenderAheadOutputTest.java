@@ -0,0 +1,74 @@
+package net.bobacus.soundgen;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RenderAheadOutputTest {
+
+    @Test
+    public void data_is_passed_through_in_order() {
+        MultiChannelPlayerTest.CapturingOutput target = new MultiChannelPlayerTest.CapturingOutput();
+        RenderAheadOutput output = new RenderAheadOutput(target, 100, 3);
+        byte[] data = new byte[12345];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        for (int p = 0; p < data.length; p += 777) {
+            output.write(data, p, Math.min(777, data.length - p));
+        }
+        output.close();
+        assertThat("closed", target.closed, is(true));
+        assertArrayEquals(data, target.bytes.toByteArray());
+        assertThat("waits for the writer", output.getFullWaits() > 0, is(true));
+    }
+
+    @Test
+    public void short_output_is_written_on_close() {
+        MultiChannelPlayerTest.CapturingOutput target = new MultiChannelPlayerTest.CapturingOutput();
+        RenderAheadOutput output = new RenderAheadOutput(target, 100, 8);
+        output.write(new byte[]{1, 2, 3}, 0, 3);
+        output.close();
+        assertArrayEquals(new byte[]{1, 2, 3}, target.bytes.toByteArray());
+        assertThat("underruns", output.getUnderruns(), is(0L));
+    }
+
+    @Test
+    public void writing_starts_before_the_ring_is_full() throws Exception {
+        MultiChannelPlayerTest.CapturingOutput target = new MultiChannelPlayerTest.CapturingOutput();
+        RenderAheadOutput output = new RenderAheadOutput(target, 100, 64);
+        output.write(new byte[300], 0, 300);
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (target.bytes.size() == 0 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertThat("written", target.bytes.size() > 0, is(true));
+        output.close();
+        assertThat("all written", target.bytes.size(), is(300));
+    }
+
+    @Test
+    public void writer_failure_is_reported_to_producer() {
+        AudioOutput failing = new AudioOutput() {
+            public void write(byte[] data, int offset, int length) {
+                throw new IllegalStateException("line failed");
+            }
+
+            public void close() {
+            }
+        };
+        RenderAheadOutput output = new RenderAheadOutput(failing, 10, 2);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                output.write(new byte[10], 0, 10);
+            }
+            output.close();
+            fail("expected failure");
+        } catch (SoundGenException e) {
+            assertThat(e.getCause().getMessage(), is("line failed"));
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package net.bobacus.soundgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import net.bobacus.soundgen.synth.Instruments;
+import net.bobacus.soundgen.synth.Sound;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ScoreStreamerTest {
+
+    private static List<Sound> sounds(int n) {
+        List<Sound> sounds = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            sounds.add(new Sound(Instruments.sine.getPitch(100 + i), 0.1));
+        }
+        return sounds;
+    }
+
+    // counts the sounds taken from it
+    private static class CountingIterator implements Iterator<Sound> {
+        CountingIterator(Iterator<Sound> i) {
+            this.i = i;
+        }
+
+        private final Iterator<Sound> i;
+        final AtomicInteger taken = new AtomicInteger();
+
+        public boolean hasNext() {
+            return i.hasNext();
+        }
+
+        public Sound next() {
+            taken.incrementAndGet();
+            return i.next();
+        }
+    }
+
+    @Test
+    public void streams_give_the_sources_sounds() {
+        List<Sound> a = sounds(20);
+        List<Sound> b = sounds(3);
+        ScoreStreamer<Sound> streamer = new ScoreStreamer<>(Arrays.asList(a.iterator(), b.iterator()), 4);
+        streamer.start();
+        List<Iterator<Sound>> streams = streamer.getStreams();
+        for (Sound s : a)
+            assertThat(streams.get(0).next(), is(sameInstance(s)));
+        assertThat("end of a", streams.get(0).hasNext(), is(false));
+        for (Sound s : b)
+            assertThat(streams.get(1).next(), is(sameInstance(s)));
+        assertThat("end of b", streams.get(1).hasNext(), is(false));
+    }
+
+    @Test
+    public void reads_no_more_than_the_window_ahead() throws InterruptedException {
+        CountingIterator source = new CountingIterator(sounds(100).iterator());
+        ScoreStreamer<Sound> streamer = new ScoreStreamer<>(Arrays.asList(source), 5);
+        streamer.start();
+        Iterator<Sound> stream = streamer.getStreams().get(0);
+        for (int i = 0; i < 10; i++)
+            stream.next();
+        Thread.sleep(100);
+        // 5 queued, and none held by the reader
+        assertThat("taken", source.taken.get(), is(15));
+        streamer.stop();
+    }
+
+    @Test
+    public void source_failure_is_thrown_to_reader() {
+        Iterator<Sound> failing = new Iterator<Sound>() {
+            public boolean hasNext() {
+                return true;
+            }
+
+            public Sound next() {
+                throw new IllegalStateException("bad note");
+            }
+        };
+        ScoreStreamer<Sound> streamer = new ScoreStreamer<>(Arrays.asList(failing), 2);
+        streamer.start();
+        try {
+            streamer.getStreams().get(0).hasNext();
+            fail("expected failure");
+        } catch (SoundGenException e) {
+            assertThat(e.getCause().getMessage(), is("bad note"));
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.jatha.Jatha;
+import org.jatha.dynatype.LispNumber;
+import org.jatha.dynatype.LispValue;
+
+/**
+ * Helpers shared by the tests which write tunes to files and evaluate them.
+ */
+final class TestSupport {
+
+    private TestSupport() {
+    }
+
+    static void write(File file, String text) throws Exception {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int intValue(LispValue v) {
+        return (int) ((LispNumber) v).getLongValue();
+    }
+
+    static int intValue(Jatha lisp, String expression) {
+        return intValue(lisp.eval(expression));
+    }
+
+}
@@ -0,0 +1,65 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static net.bobacus.soundgen.TestSupport.intValue;
+import static net.bobacus.soundgen.TestSupport.write;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TuneEvaluatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void unchanged_file_is_not_evaluated_again() throws Exception {
+        File file = folder.newFile("tune.txt");
+        write(file, "(defvar *a* 3)\n.\n(+ *a* 1)\n.\n");
+        TuneEvaluator evaluator = new TuneEvaluator();
+        assertThat(intValue(evaluator.evaluate(file)), is(4));
+        assertThat("evaluated", evaluator.getEvaluatedBlocks(), is(2));
+        assertThat(evaluator.evaluate(file), is(nullValue()));
+        assertThat("evaluated again", evaluator.getEvaluatedBlocks(), is(0));
+    }
+
+    @Test
+    public void changed_block_is_evaluated_with_those_after_it() throws Exception {
+        File file = folder.newFile("tune.txt");
+        // the first block counts its evaluations, so evaluating it again would show
+        write(file, "(defvar *n* 0)\n.\n(setq *n* (+ *n* 1))\n.\n(defvar *b* 10)\n.\n(+ *n* *b*)\n.\n");
+        TuneEvaluator evaluator = new TuneEvaluator();
+        assertThat(intValue(evaluator.evaluate(file)), is(11));
+
+        write(file, "(defvar *n* 0)\n.\n(setq *n* (+ *n* 1))\n.\n(setq *b* 20)\n.\n(+ *n* *b*)\n.\n");
+        assertThat(intValue(evaluator.evaluate(file)), is(21));
+        assertThat("evaluated", evaluator.getEvaluatedBlocks(), is(2));
+        assertThat("blocks", evaluator.getBlocks(), is(4));
+    }
+
+    @Test
+    public void removed_blocks_are_forgotten() throws Exception {
+        File file = folder.newFile("tune.txt");
+        write(file, "(defvar *a* 1)\n.\n(+ *a* 1)\n.\n(+ *a* 2)\n.\n");
+        TuneEvaluator evaluator = new TuneEvaluator();
+        assertThat(intValue(evaluator.evaluate(file)), is(3));
+
+        write(file, "(defvar *a* 1)\n.\n(+ *a* 1)\n.\n");
+        assertThat(intValue(evaluator.evaluate(file)), is(2));
+        assertThat("evaluated", evaluator.getEvaluatedBlocks(), is(0));
+        assertThat("blocks", evaluator.getBlocks(), is(2));
+    }
+
+    @Test(expected = SoundGenException.class)
+    public void empty_file_is_rejected() throws Exception {
+        File file = folder.newFile("tune.txt");
+        write(file, "(+ 1 2)\n");
+        new TuneEvaluator().evaluate(file);
+    }
+
+}
@@ -0,0 +1,90 @@
+package net.bobacus.soundgen;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.bobacus.soundgen.sampler.SamplerParams;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class WavFileOutputTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void written_file_reads_back() throws Exception {
+        File file = folder.newFile("test.wav");
+        byte[] data = new byte[200000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        WavFileOutput output = new WavFileOutput(file, new SamplerParams(22050, 16, 1));
+        output.write(data, 0, 1000);
+        output.write(data, 1000, data.length - 1000);
+        output.close();
+
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(file)) {
+            AudioFormat format = in.getFormat();
+            assertThat("sample rate", format.getSampleRate(), is(22050f));
+            assertThat("bits", format.getSampleSizeInBits(), is(16));
+            assertThat("channels", format.getChannels(), is(1));
+            assertThat("frames", in.getFrameLength(), is((long) data.length / 2));
+            byte[] read = new byte[data.length];
+            int n = 0;
+            while (n < read.length) {
+                n += in.read(read, n, read.length - n);
+            }
+            assertArrayEquals(data, read);
+        }
+        assertThat("file length", file.length(), is(44L + data.length));
+    }
+
+    @Test
+    public void float_format_is_marked_in_header() throws Exception {
+        File file = folder.newFile("float.wav");
+        WavFileOutput output = new WavFileOutput(file, new SamplerParams(8000, 32, 2, false, true));
+        output.write(new byte[16], 0, 16);
+        output.close();
+
+        byte[] header = Files.readAllBytes(file.toPath());
+        ByteBuffer b = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat("format tag", b.getShort(20), is((short) 3));
+        assertThat("channels", b.getShort(22), is((short) 2));
+        assertThat("block align", b.getShort(32), is((short) 8));
+        assertThat("bits", b.getShort(34), is((short) 32));
+        assertThat("data size", b.getInt(40), is(16));
+    }
+
+    @Test
+    public void output_past_the_riff_size_limit_is_rejected() throws Exception {
+        File file = folder.newFile("huge.wav");
+        WavFileOutput output = new WavFileOutput(file, new SamplerParams(8000, 16, 1));
+        // as if nearly 4GiB had been written already
+        output.dataSize = 0xFFFFFFFFL - 36 - 100;
+        output.write(new byte[99], 0, 99);
+        try {
+            output.write(new byte[2], 0, 2);
+            fail("no exception");
+        } catch (SoundGenException e) {
+            assertThat(e.getMessage(), containsString("at most"));
+        }
+        output.abort();
+        assertThat("deleted", file.exists(), is(false));
+    }
+
+}
@@ -0,0 +1,135 @@
+package net.bobacus.soundgen.effect;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class EffectTest {
+
+    private static double[] impulse(int length) {
+        double[] b = new double[length];
+        b[0] = 1;
+        return b;
+    }
+
+    // the output of a new chain of the effects, processing the input in blocks of the given size
+    private static double[] processInBlocks(List<EffectSpec> specs, double[] input, int blockSize) {
+        EffectChain chain = EffectSpec.createChain(specs, 44100, 4096);
+        double[] b = input.clone();
+        for (int i = 0; i < b.length; i += blockSize) {
+            chain.process(b, i, Math.min(blockSize, b.length - i));
+        }
+        return b;
+    }
+
+    @Test
+    public void gain_and_clip_shape_levels() {
+        double[] b = {-2, -0.5, 0, 0.5, 2};
+        new Gain(0.5).process(b, 0, b.length);
+        assertThat(b, is(new double[]{-1, -0.25, 0, 0.25, 1}));
+        new SoftClip(2).process(b, 0, b.length);
+        assertThat(b, is(new double[]{-1, -0.6875, 0, 0.6875, 1}));
+    }
+
+    @Test
+    public void low_pass_passes_low_frequencies_and_cuts_high_ones() {
+        double[] dc = new double[44100];
+        Arrays.fill(dc, 1);
+        new LowPass(100, 44100).process(dc, 0, dc.length);
+        assertEquals("dc", 1, dc[dc.length - 1], 1e-9);
+
+        double[] nyquist = new double[44100];
+        for (int i = 0; i < nyquist.length; i++) {
+            nyquist[i] = (i % 2 == 0 ? 1 : -1);
+        }
+        new LowPass(100, 44100).process(nyquist, 0, nyquist.length);
+        assertTrue("nyquist", Math.abs(nyquist[nyquist.length - 1]) < 0.01);
+    }
+
+    @Test
+    public void delay_repeats_with_feedback() {
+        double[] b = impulse(100);
+        new FeedbackDelay(30, 0.5, 0.8).process(b, 0, b.length);
+        assertEquals("input", 1, b[0], 1e-12);
+        assertEquals("first echo", 0.8, b[30], 1e-12);
+        assertEquals("second echo", 0.4, b[60], 1e-12);
+        assertEquals("third echo", 0.2, b[90], 1e-12);
+        assertEquals("between", 0, b[45], 1e-12);
+    }
+
+    @Test
+    public void reverb_decays() {
+        double[] b = processInBlocks(Arrays.asList(new EffectSpec("reverb", 0.5, 0.5, 1)), impulse(44100 * 4), 4096);
+        double early = 0;
+        double late = 0;
+        for (int i = 1; i < 44100; i++) {
+            early += b[i] * b[i];
+            late += b[i + 44100 * 3] * b[i + 44100 * 3];
+        }
+        assertTrue("reverberates", early > 1e-4);
+        assertTrue("decays", late < early * 1e-3);
+    }
+
+    @Test
+    public void output_does_not_depend_on_block_size() {
+        List<EffectSpec> specs = Arrays.asList(new EffectSpec("lowpass", 2000), new EffectSpec("delay", 0.01, 0.7, 0.5),
+                new EffectSpec("reverb", 0.8, 0.2, 0.3), new EffectSpec("CLIP", 1.5));
+        double[] input = new double[20000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = Math.sin(i * 0.05) * (i % 5000 < 100 ? 1 : 0);
+        }
+        double[] whole = processInBlocks(specs, input, input.length);
+        assertThat("blocks of 1000", processInBlocks(specs, input, 1000), is(whole));
+        assertThat("blocks of 37", processInBlocks(specs, input, 37), is(whole));
+    }
+
+    @Test
+    public void single_precision_matches_double() {
+        List<EffectSpec> specs = Arrays.asList(new EffectSpec("reverb", 0.8, 0.5, 0.3));
+        float[] f = new float[10000];
+        f[0] = 1;
+        EffectSpec.createChain(specs, 44100, 512).process(f, 0, f.length);
+        double[] d = processInBlocks(specs, impulse(f.length), f.length);
+        for (int i = 0; i < f.length; i++) {
+            assertEquals("sample " + i, (float) d[i], f[i], 0);
+        }
+    }
+
+    @Test
+    public void tails_last_until_the_output_has_died_away() {
+        for (EffectSpec spec : new EffectSpec[]{new EffectSpec("delay", 0.1, 0.7, 0.5),
+                new EffectSpec("reverb", 0.8, 0.5, 0.3), new EffectSpec("lowpass", 50), new EffectSpec("gain", 2)}) {
+            List<EffectSpec> specs = Arrays.asList(spec);
+            EffectChain chain = EffectSpec.createChain(specs, 44100, 4096);
+            int tail = chain.getTailLength();
+            assertThat(spec + " spec", EffectSpec.getTailLength(specs, 44100), is(tail));
+            // after the impulse, the output is at most 60dB down on it
+            double[] b = processInBlocks(specs, impulse(tail + 44100), 4096);
+            for (int i = Math.max(1, tail); i < b.length; i++) {
+                assertTrue(spec + " sample " + i, Math.abs(b[i]) <= 1e-3);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void endless_feedback_is_rejected() {
+        new EffectSpec("delay", 0.1, 1, 0.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown_effect_is_rejected() {
+        new EffectSpec("flanger", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrong_number_of_arguments_is_rejected() {
+        new EffectSpec("delay", 0.5);
+    }
+
+}
@@ -0,0 +1,70 @@
+package net.bobacus.soundgen.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.bobacus.soundgen.channel.Channel;
+import net.bobacus.soundgen.channel.EventChannel;
+import net.bobacus.soundgen.channel.NoteEvent;
+import net.bobacus.soundgen.sampler.ChannelSampler;
+import net.bobacus.soundgen.sampler.NoteCache;
+import net.bobacus.soundgen.sampler.SamplerParams;
+import net.bobacus.soundgen.sampler.VoiceSampler;
+import net.bobacus.soundgen.synth.Instruments;
+import net.bobacus.soundgen.synth.Sound;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RenderStatisticsTest {
+
+    private static final SamplerParams params = new SamplerParams(1000, 16, 1);
+
+    @Test
+    public void notes_are_counted_by_instrument() {
+        List<Sound> sounds = new ArrayList<>();
+        sounds.add(new Sound(Instruments.sine.getPitch(50), 0.1, 1, 50));
+        sounds.add(new Sound(Instruments.glock.getPitch(100), 0.2, 2, 100));
+        sounds.add(new Sound(Instruments.sine.getPitch(50), 0.1, 1, 50));
+        RenderStatistics statistics = new RenderStatistics();
+        ChannelSampler sampler = new ChannelSampler(new Channel(sounds.iterator()), params,
+                new NoteCache(1 << 20), statistics);
+        double[] b = new double[50];
+        for (int p = 0; p < 400; p += b.length) {
+            sampler.getSamples(b, 0, b.length, p);
+        }
+        assertThat("notes started", statistics.getNotesStarted(), is(3L));
+        // each note is counted once: rendered whole on its cache miss, or copied out of the cache on a hit
+        assertThat("sine samples", statistics.getInstruments().get(1).getSamples(), is(100L));
+        assertThat("glock samples", statistics.getInstruments().get(2).getSamples(), is(200L));
+        assertThat("cached samples", statistics.getCached().getSamples(), is(100L));
+    }
+
+    @Test
+    public void voices_count_each_note_once() {
+        List<NoteEvent> events = new ArrayList<>();
+        events.add(new NoteEvent(0, new Sound(Instruments.sine.getPitch(50), 0.1, 1, 50)));
+        events.add(new NoteEvent(0.05, new Sound(Instruments.glock.getPitch(100), 0.2, 2, 100)));
+        events.add(new NoteEvent(0.1, new Sound(Instruments.sine.getPitch(50), 0.1, 1, 50)));
+        RenderStatistics statistics = new RenderStatistics();
+        VoiceSampler sampler = new VoiceSampler(new EventChannel(events.iterator()), params, 2,
+                new NoteCache(1 << 20), statistics);
+        double[] b = new double[50];
+        for (int p = 0; p < 300; p += b.length) {
+            sampler.getSamples(b, 0, b.length, p);
+        }
+        assertThat("notes started", statistics.getNotesStarted(), is(3L));
+        assertThat("sine samples", statistics.getInstruments().get(1).getSamples(), is(100L));
+        assertThat("glock samples", statistics.getInstruments().get(2).getSamples(), is(200L));
+        assertThat("cached samples", statistics.getCached().getSamples(), is(100L));
+    }
+
+    @Test
+    public void none_is_disabled() {
+        assertThat(RenderMetrics.NONE.isEnabled(), is(false));
+        assertThat(new RenderStatistics().isEnabled(), is(true));
+    }
+
+}
@@ -0,0 +1,143 @@
+package net.bobacus.soundgen.sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.bobacus.soundgen.channel.Channel;
+import net.bobacus.soundgen.synth.Instruments;
+import net.bobacus.soundgen.synth.Sound;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class ChannelSamplerTest {
+
+    private static final SamplerParams params = new SamplerParams(1000, 16, 1);
+
+    private static List<Sound> sounds() {
+        List<Sound> sounds = new ArrayList<>();
+        sounds.add(new Sound(Instruments.sine.getPitch(50), 0.1, 1, 50));
+        sounds.add(new Sound(Instruments.silence, 0, 0, 0));
+        sounds.add(new Sound(Instruments.glock.getPitch(100), 0.25, 2, 100));
+        sounds.add(new Sound(Instruments.clarinet.getPitch(75), 0.15, 4, 75));
+        return sounds;
+    }
+
+    // the whole channel, rendered note by note
+    private static double[] expected(List<Sound> sounds, int length) {
+        double[] b = new double[length];
+        int p = 0;
+        for (Sound s : sounds) {
+            int n = (int) (s.getDuration() * params.getSampleRate());
+            s.getValues(b, p, n, 0, 1.0 / params.getSampleRate());
+            p += n;
+        }
+        return b;
+    }
+
+    @Test
+    public void sequential_chunks_match_notes() {
+        List<Sound> sounds = sounds();
+        ChannelSampler sampler = new ChannelSampler(new Channel(sounds.iterator()), params);
+        double[] expected = expected(sounds, 600);
+        double[] actual = new double[600];
+        for (int p = 0; p < actual.length; p += 70) {
+            sampler.getSamples(actual, p, Math.min(70, actual.length - p), p);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("sample " + i, expected[i], actual[i], 1e-12);
+        }
+        for (int i = 500; i < actual.length; i++) {
+            assertThat("sample " + i + " past end", actual[i], is(0.0));
+        }
+    }
+
+    @Test
+    public void seeking_matches_sequential() {
+        List<Sound> sounds = sounds();
+        ChannelSampler sequential = new ChannelSampler(new Channel(sounds.iterator()), params);
+        double[] all = new double[600];
+        sequential.getSamples(all, 0, 600, 0);
+
+        ChannelSampler seeking = new ChannelSampler(new Channel(sounds.iterator()), params);
+        int[] starts = {320, 10, 99, 100, 550, 0, 349};
+        for (int start : starts) {
+            double[] b = new double[40];
+            seeking.getSamples(b, 0, b.length, start);
+            double[] expected = new double[40];
+            System.arraycopy(all, start, expected, 0, Math.min(40, all.length - start));
+            assertArrayEquals("start " + start, expected, b, 1e-12);
+        }
+    }
+
+    @Test
+    public void cached_notes_match_uncached() {
+        List<Sound> sounds = sounds();
+        ChannelSampler uncached = new ChannelSampler(new Channel(sounds.iterator()), params);
+        ChannelSampler cached = new ChannelSampler(new Channel(sounds.iterator()), params, new NoteCache(1 << 20));
+        double[] a = new double[520];
+        double[] b = new double[520];
+        for (int p = 0; p < a.length; p += 130) {
+            uncached.getSamples(a, p, 130, p);
+            cached.getSamples(b, p, 130, p);
+        }
+        assertArrayEquals(a, b, 1e-12);
+    }
+
+    @Test
+    public void iterator_matches_buffer() {
+        List<Sound> sounds = sounds();
+        ChannelSampler sampler = new ChannelSampler(new Channel(sounds.iterator()), params);
+        double[] chunk = sampler.getSamples(200, 50).next().getSamples();
+        double[] b = new double[200];
+        new ChannelSampler(new Channel(sounds.iterator()), params).getSamples(b, 0, 200, 50);
+        assertArrayEquals(b, chunk, 0);
+    }
+
+    @Test
+    public void lazy_channel_matches_eager() {
+        List<Sound> sounds = sounds();
+        ChannelSampler eager = new ChannelSampler(new Channel(sounds.iterator()), params);
+        ChannelSampler lazy = new ChannelSampler(new Channel(sounds.iterator(), false), params);
+        double[] a = new double[600];
+        double[] b = new double[600];
+        eager.getSamples(a, 0, 600, 0);
+        for (int p = 0; p < b.length; p += 60) {
+            lazy.getSamples(b, p, 60, p);
+        }
+        assertArrayEquals(a, b, 1e-12);
+    }
+
+    @Test
+    public void length_is_known_once_the_end_is_reached() {
+        ChannelSampler sampler = new ChannelSampler(new Channel(sounds().iterator(), false), params);
+        double[] b = new double[100];
+        sampler.getSamples(b, 0, 100, 0);
+        assertThat("before end", sampler.getLength(), is(-1));
+        sampler.getSamples(b, 0, 100, 450);
+        assertThat("after end", sampler.getLength(), is(500));
+    }
+
+    @Test
+    public void single_precision_matches_double() {
+        List<Sound> sounds = sounds();
+        SamplerParams single = new SamplerParams(1000, 16, 1, true);
+        NoteCache cache = new NoteCache(1 << 20);
+        ChannelSampler doubles = new ChannelSampler(new Channel(sounds.iterator()), params);
+        ChannelSampler floats = new ChannelSampler(new Channel(sounds.iterator()), single, cache);
+        double[] a = new double[600];
+        float[] b = new float[600];
+        for (int p = 0; p < a.length; p += 70) {
+            doubles.getSamples(a, p, Math.min(70, a.length - p), p);
+            floats.getSamples(b, p, Math.min(70, b.length - p), p);
+        }
+        for (int i = 0; i < a.length; i++) {
+            assertEquals("sample " + i, a[i], b[i], 1e-6);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package net.bobacus.soundgen.sampler;
+
+import org.junit.Test;
+
+import net.bobacus.soundgen.synth.Instruments;
+import net.bobacus.soundgen.synth.Sound;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class NoteCacheTest {
+
+    private static final SamplerParams params = new SamplerParams(8000, 16, 1);
+
+    private static Sound note(int instrument, double pitch, double duration) {
+        return new Sound(Instruments.mInstruments[instrument].getPitch(pitch), duration, instrument, pitch);
+    }
+
+    @Test
+    public void repeated_note_is_a_hit() {
+        NoteCache cache = new NoteCache(1 << 20);
+        double[] first = cache.getSamples(note(2, 440, 0.5), params);
+        double[] second = cache.getSamples(note(2, 440, 0.5), params);
+        assertThat(second, is(sameInstance(first)));
+        assertThat("hits", cache.getHits(), is(1L));
+        assertThat("misses", cache.getMisses(), is(1L));
+        assertThat("bytes", cache.getBytes(), is(8L * 4000));
+    }
+
+    @Test
+    public void cached_note_matches_rendering() {
+        NoteCache cache = new NoteCache(1 << 20);
+        Sound sound = note(5, 261.6, 0.25);
+        double[] cached = cache.getSamples(sound, params);
+        double[] rendered = new SoundSampler(sound, params).getSamples(2000, 0).next().getSamples();
+        assertThat("length", cached.length, is(rendered.length));
+        for (int i = 0; i < rendered.length; i++) {
+            assertEquals("sample " + i, rendered[i], cached[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void least_recently_used_note_is_evicted() {
+        NoteCache cache = new NoteCache(8L * 8000 * 2);
+        cache.getSamples(note(1, 440, 1), params);
+        cache.getSamples(note(1, 550, 1), params);
+        cache.getSamples(note(1, 440, 1), params);
+        cache.getSamples(note(1, 660, 1), params);
+        assertThat("evictions", cache.getEvictions(), is(1L));
+        cache.getSamples(note(1, 440, 1), params);
+        assertThat("hits", cache.getHits(), is(2L));
+        cache.getSamples(note(1, 550, 1), params);
+        assertThat("misses", cache.getMisses(), is(4L));
+    }
+
+    @Test
+    public void noise_and_unknown_sounds_bypass_cache() {
+        NoteCache cache = new NoteCache(1 << 20);
+        assertThat(cache.getSamples(note(3, 440, 0.1), params), is(nullValue()));
+        assertThat(cache.getSamples(new Sound(Instruments.sine, 0.1), params), is(nullValue()));
+        assertThat("bypasses", cache.getBypasses(), is(2L));
+        assertThat("bytes", cache.getBytes(), is(0L));
+    }
+
+    @Test
+    public void single_precision_notes_are_cached_separately_in_half_the_space() {
+        NoteCache cache = new NoteCache(1 << 20);
+        double[] d = cache.getSamples(note(2, 440, 0.5), params);
+        float[] f = cache.getFloatSamples(note(2, 440, 0.5), params);
+        assertThat("float hit", cache.getFloatSamples(note(2, 440, 0.5), params),
+                is(sameInstance(f)));
+        assertThat("misses", cache.getMisses(), is(2L));
+        assertThat("bytes", cache.getBytes(), is(8L * 4000 + 4L * 4000));
+        for (int i = 0; i < d.length; i++) {
+            assertEquals("sample " + i, d[i], f[i], 1e-6);
+        }
+    }
+
+}
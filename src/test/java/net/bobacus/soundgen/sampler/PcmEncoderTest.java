@@ -0,0 +1,102 @@
+package net.bobacus.soundgen.sampler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PcmEncoderTest {
+
+    private static PcmEncoder encoder(int bits, int channels, boolean dither) {
+        return new PcmEncoder(new SamplerParams(8000, bits, channels), dither);
+    }
+
+    private static short[] shorts(byte[] data) {
+        short[] s = new short[data.length / 2];
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(s);
+        return s;
+    }
+
+    @Test
+    public void sixteen_bits_round_to_nearest_level() {
+        byte[] data = new byte[8];
+        encoder(16, 1, false).encode(new double[]{0, 0.5, -1, 1}, 0, 4, 1, 0, data, 0);
+        assertArrayEquals(new short[]{0, 16384, -32767, 32767}, shorts(data));
+    }
+
+    @Test
+    public void loud_samples_saturate() {
+        byte[] data = new byte[6];
+        encoder(16, 1, false).encode(new float[]{0.75f, -0.75f, 0.25f}, 0, 3, 2, 0, data, 0);
+        assertArrayEquals(new short[]{32767, -32767, 16384}, shorts(data));
+    }
+
+    @Test
+    public void eight_bits_are_unsigned() {
+        byte[] data = new byte[3];
+        encoder(8, 1, false).encode(new double[]{-1, 0, 1}, 0, 3, 1, 0, data, 0);
+        assertArrayEquals(new byte[]{1, (byte) 128, (byte) 255}, data);
+    }
+
+    @Test
+    public void twenty_four_bits_are_little_endian() {
+        byte[] data = new byte[6];
+        encoder(24, 1, false).encode(new double[]{1, -1}, 0, 2, 1, 0, data, 0);
+        assertArrayEquals(new byte[]{(byte) 0xff, (byte) 0xff, 0x7f, 0x01, 0x00, (byte) 0x80}, data);
+    }
+
+    @Test
+    public void float_samples_keep_their_value() {
+        PcmEncoder encoder = new PcmEncoder(new SamplerParams(8000, 32, 1, false, true), false);
+        ByteBuffer out = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        encoder.encode(new double[][]{{0.1, -3}}, 0, 2, 1, out);
+        assertThat("position", out.position(), is(8));
+        assertThat(out.getFloat(0), is(0.1f));
+        assertThat(out.getFloat(4), is(-1f));
+    }
+
+    @Test
+    public void channels_are_interleaved() {
+        byte[] data = new byte[12];
+        PcmEncoder encoder = encoder(16, 2, false);
+        assertThat("frame size", encoder.getFrameSize(), is(4));
+        encoder.encode(new double[][]{{0.5, 0, -0.25}, {-1, 1, 0}}, 0, 3, 1, data, 0);
+        assertArrayEquals(new short[]{16384, -32767, 0, 32767, -8192, 0}, shorts(data));
+    }
+
+    @Test
+    public void dither_is_repeatable_and_within_one_level() {
+        int n = 1000;
+        double[] samples = new double[n];
+        for (int i = 0; i < n; i++) {
+            samples[i] = Math.sin(i * 0.05) * 0.5;
+        }
+        byte[] plain = new byte[n * 2];
+        byte[] first = new byte[n * 2];
+        byte[] second = new byte[n * 2];
+        encoder(16, 1, false).encode(samples, 0, n, 1, 0, plain, 0);
+        encoder(16, 1, true).encode(samples, 0, n, 1, 0, first, 0);
+        encoder(16, 1, true).encode(samples, 0, n, 1, 0, second, 0);
+        assertArrayEquals(first, second);
+        short[] p = shorts(plain);
+        short[] d = shorts(first);
+        int changed = 0;
+        for (int i = 0; i < n; i++) {
+            assertTrue("sample " + i, Math.abs(p[i] - d[i]) <= 1);
+            if (p[i] != d[i])
+                changed++;
+        }
+        assertTrue("dithered samples", changed > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupported_format_is_rejected() {
+        encoder(12, 1, false);
+    }
+
+}
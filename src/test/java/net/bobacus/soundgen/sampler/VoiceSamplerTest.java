@@ -0,0 +1,148 @@
+package net.bobacus.soundgen.sampler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.bobacus.soundgen.channel.EventChannel;
+import net.bobacus.soundgen.channel.NoteEvent;
+import net.bobacus.soundgen.metrics.RenderMetrics;
+import net.bobacus.soundgen.synth.Instruments;
+import net.bobacus.soundgen.synth.Sound;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class VoiceSamplerTest {
+
+    private static final SamplerParams params = new SamplerParams(1000, 16, 1);
+
+    private static Sound sound(double frequency, double duration) {
+        return new Sound(Instruments.sine.getPitch(frequency), duration, 1, frequency);
+    }
+
+    // a chord, and then two overlapping notes starting part way through the 64 sample blocks used below
+    private static List<NoteEvent> events() {
+        List<NoteEvent> events = new ArrayList<>();
+        events.add(new NoteEvent(0, sound(50, 0.2)));
+        events.add(new NoteEvent(0, sound(60, 0.2)));
+        events.add(new NoteEvent(0, sound(75, 0.1)));
+        events.add(new NoteEvent(0.15, sound(40, 0.3)));
+        events.add(new NoteEvent(0.301, sound(90, 0.05)));
+        return events;
+    }
+
+    // the events, each rendered on its own and added
+    private static double[] expected(List<NoteEvent> events, int length) {
+        double[] b = new double[length];
+        for (NoteEvent e : events) {
+            int start = (int) Math.round(e.getStart() * params.getSampleRate());
+            int n = (int) (e.getSound().getDuration() * params.getSampleRate());
+            double[] note = new double[n];
+            e.getSound().getValues(note, 0, n, 0, 1.0 / params.getSampleRate());
+            for (int i = 0; i < n && start + i < length; i++) {
+                b[start + i] += note[i];
+            }
+        }
+        return b;
+    }
+
+    private static double[] render(VoiceSampler sampler, int length, int block) {
+        double[] b = new double[length];
+        for (int p = 0; p < length; p += block) {
+            sampler.getSamples(b, p, Math.min(block, length - p), p);
+        }
+        return b;
+    }
+
+    @Test
+    public void overlapping_events_are_summed() {
+        List<NoteEvent> events = events();
+        VoiceSampler sampler = new VoiceSampler(new EventChannel(events.iterator()), params, 4);
+        double[] actual = render(sampler, 500, 64);
+        double[] expected = expected(events, 500);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("sample " + i, expected[i], actual[i], 1e-12);
+        }
+        assertThat("stolen", sampler.getStolenVoices(), is(0));
+        assertThat("length", sampler.getLength(), is(450));
+    }
+
+    @Test
+    public void level_does_not_depend_on_the_number_of_voices() {
+        List<NoteEvent> events = events();
+        double[] four = render(new VoiceSampler(new EventChannel(events.iterator()), params, 4), 500, 64);
+        double[] sixteen = render(new VoiceSampler(new EventChannel(events.iterator()), params, 16), 500, 64);
+        assertArrayEquals(four, sixteen, 0);
+    }
+
+    @Test
+    public void oldest_voice_is_stolen() {
+        List<NoteEvent> events = new ArrayList<>();
+        events.add(new NoteEvent(0, sound(50, 0.2)));
+        events.add(new NoteEvent(0.05, sound(60, 0.2)));
+        events.add(new NoteEvent(0.1, sound(75, 0.2)));
+        VoiceSampler sampler = new VoiceSampler(new EventChannel(events.iterator()), params, 2);
+        double[] actual = render(sampler, 300, 64);
+
+        // the first note is cut off when the third starts
+        List<NoteEvent> heard = new ArrayList<>();
+        heard.add(new NoteEvent(0, sound(50, 0.1)));
+        heard.add(events.get(1));
+        heard.add(events.get(2));
+        assertArrayEquals(expected(heard, 300), actual, 1e-12);
+        assertThat("stolen", sampler.getStolenVoices(), is(1));
+    }
+
+    @Test
+    public void seeking_matches_sequential() {
+        List<NoteEvent> events = events();
+        double[] all = render(new VoiceSampler(new EventChannel(events.iterator()), params, 2), 500, 500);
+
+        VoiceSampler seeking = new VoiceSampler(new EventChannel(events.iterator()), params, 2);
+        int[] starts = {320, 10, 149, 150, 420, 0, 299};
+        for (int start : starts) {
+            double[] b = new double[40];
+            seeking.getSamples(b, 0, b.length, start);
+            double[] expected = new double[40];
+            System.arraycopy(all, start, expected, 0, Math.min(40, all.length - start));
+            assertArrayEquals("start " + start, expected, b, 1e-12);
+        }
+    }
+
+    @Test
+    public void cached_notes_match_uncached() {
+        List<NoteEvent> events = events();
+        double[] uncached = render(new VoiceSampler(new EventChannel(events.iterator()), params, 3), 500, 64);
+        VoiceSampler cached = new VoiceSampler(new EventChannel(events.iterator()), params, 3,
+                new NoteCache(1 << 20), RenderMetrics.NONE);
+        assertArrayEquals(uncached, render(cached, 500, 64), 1e-12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void events_out_of_order_are_rejected() {
+        List<NoteEvent> events = new ArrayList<>();
+        events.add(new NoteEvent(0.1, sound(50, 0.2)));
+        events.add(new NoteEvent(0, sound(60, 0.2)));
+        render(new VoiceSampler(new EventChannel(events.iterator()), params, 2), 300, 64);
+    }
+
+    @Test
+    public void single_precision_matches_double() {
+        List<NoteEvent> events = events();
+        double[] expected = render(new VoiceSampler(new EventChannel(events.iterator()), params, 3), 500, 64);
+        VoiceSampler sampler = new VoiceSampler(new EventChannel(events.iterator()),
+                new SamplerParams(1000, 16, 1, true), 3, new NoteCache(1 << 20), RenderMetrics.NONE);
+        float[] actual = new float[500];
+        for (int p = 0; p < actual.length; p += 64) {
+            sampler.getSamples(actual, p, Math.min(64, actual.length - p), p);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("sample " + i, expected[i], actual[i], 1e-6);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package net.bobacus.soundgen.synth;
+
+import org.junit.Test;
+
+import static net.bobacus.soundgen.synth.SynthTest.assertBlockMatchesValues;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class EnvelopeTest {
+
+    private static final double STEP = 1.0 / 44100;
+
+    @Test
+    public void adsr_passes_through_its_levels() {
+        Envelope e = Envelope.adsr(0.1, 0.2, 0.5, 1, 0.5);
+        assertThat("before", e.getValue(-1), is(0.0));
+        assertEquals("half attack", 0.5, e.getValue(0.05), 1e-12);
+        assertEquals("peak", 1, e.getValue(0.1), 1e-12);
+        assertEquals("half decay", Math.sqrt(0.5), e.getValue(0.2), 1e-12);
+        assertEquals("sustain", 0.5, e.getValue(0.7), 1e-12);
+        assertEquals("half release", 0.25, e.getValue(1.25), 1e-12);
+        assertThat("after", e.getValue(2), is(0.0));
+    }
+
+    @Test
+    public void block_matches_values_across_segments() {
+        Envelope e = Envelope.adsr(0.1, 0.2, 0.5, 1, 0.5);
+        assertBlockMatchesValues(e, -0.01, STEP, 44100 * 2);
+        assertBlockMatchesValues(e, 0.15, STEP, 1000);
+        assertBlockMatchesValues(e.getPitch(440), 0, STEP, 1000);
+    }
+
+    @Test
+    public void exponential_envelope_matches_exponential_synth() {
+        Synth decay = new Synth.Exponential(0.97);
+        Envelope e = Envelope.exponential(1, Math.pow(0.97, 1000), 1000);
+        double[] expected = new double[44100];
+        double[] actual = new double[44100];
+        decay.getValues(expected, 0, expected.length, 0.5, 440 * STEP);
+        e.getValues(actual, 0, actual.length, 0.5, 440 * STEP);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("sample " + i, expected[i], actual[i], 1e-12);
+        }
+    }
+
+    @Test
+    public void exponential_block_stays_close_to_pow() {
+        Synth decay = new Synth.Exponential(0.5);
+        double[] block = new double[44100];
+        decay.getValues(block, 0, block.length, 0, STEP);
+        for (int i = 0; i < block.length; i += 97) {
+            double expected = Math.pow(0.5, i * STEP);
+            assertEquals("sample " + i, expected, block[i], expected * 1e-11);
+        }
+    }
+
+    @Test
+    public void linear_envelope_holds_its_end_level() {
+        Envelope e = Envelope.linear(1, -1, 2);
+        double[] block = new double[5];
+        e.getValues(block, 0, 5, 0, 1);
+        assertThat(block, is(new double[]{1, 0, -1, -1, -1}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void exponential_segment_cannot_reach_zero() {
+        Envelope.exponential(1, 0, 1);
+    }
+
+}
@@ -0,0 +1,93 @@
+package net.bobacus.soundgen.synth;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class SynthCompilerTest {
+
+    private static final double STEP = 1.0 / 44100;
+
+    private static void assertCompiledMatchesTree(Synth tree, double position, int count) {
+        Synth compiled = SynthCompiler.compile(tree);
+        assertThat("compiled", compiled, instanceOf(CompiledSynth.class));
+        double[] expected = new double[count];
+        tree.getValues(expected, 0, count, position, STEP);
+        double[] actual = new double[count + 1];
+        compiled.getValues(actual, 1, count, position, STEP);
+        for (int i = 0; i < count; i++) {
+            assertEquals("sample " + i, expected[i], actual[i + 1], 1e-9);
+        }
+    }
+
+    @Test
+    public void compiled_instruments_match_tree() {
+        Synth[] synths = {
+                Instruments.sine, Instruments.glock, Instruments.clarinet, Instruments.clarinetTongued,
+                Instruments.bass, Instruments.bassSlide, Instruments.tongued
+        };
+        for (Synth s : synths) {
+            assertCompiledMatchesTree(s, 0, 2000);
+            assertCompiledMatchesTree(s.getPitch(261.6), 1.5, 2000);
+        }
+    }
+
+    @Test
+    public void compiled_composition_and_sound_match_tree() {
+        Synth s = new Synth.Composition(new Synth.Pitch(Instruments.glock, 2), new Synth.Exponential(0.9));
+        assertCompiledMatchesTree(s, 0.5, 1000);
+        assertCompiledMatchesTree(new Sound(Instruments.clarinetTongued.getPitch(440), 0.01), 0, 1000);
+    }
+
+    @Test
+    public void compiled_pitch_of_fm_matches_tree() {
+        Synth compiled = SynthCompiler.compile(Instruments.bassSlide);
+        Synth pitched = compiled.getPitch(220);
+        double[] expected = new double[1000];
+        Instruments.bassSlide.getPitch(220).getValues(expected, 0, expected.length, 0, STEP);
+        double[] actual = new double[1000];
+        pitched.getValues(actual, 0, actual.length, 0, STEP);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("sample " + i, expected[i], actual[i], 1e-9);
+        }
+    }
+
+    @Test
+    public void uncompilable_tree_falls_back_to_itself() {
+        assertThat(SynthCompiler.compile(Instruments.noise), is(sameInstance(Instruments.noise)));
+    }
+
+    @Test
+    public void partly_compilable_tree_calls_back_to_tree() {
+        Synth s = new Synth.MultiMix(Instruments.rapidDecay, new Synth.Composition(Instruments.sine, Instruments.noise));
+        Synth compiled = SynthCompiler.compile(s);
+        assertThat("compiled", compiled, instanceOf(CompiledSynth.class));
+        double[] b = new double[100];
+        compiled.getValues(b, 0, b.length, 0, STEP);
+        for (int i = 0; i < b.length; i++) {
+            assertThat("sample " + i + " in range", Math.abs(b[i]) <= 1, is(true));
+        }
+    }
+
+    @Test
+    public void single_precision_matches_double() {
+        Synth[] synths = {
+                Instruments.sine.getPitch(440), Instruments.glock.getPitch(440),
+                SynthCompiler.compile(Instruments.clarinet.getPitch(261.6)), new Sound(Instruments.bass.getPitch(55), 0.01)
+        };
+        for (Synth s : synths) {
+            double[] expected = new double[1000];
+            s.getValues(expected, 0, 1000, 0.25, STEP);
+            float[] actual = new float[1001];
+            s.getValues(actual, 1, 1000, 0.25, STEP);
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("sample " + i, expected[i], actual[i + 1], 1e-6);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package net.bobacus.soundgen.synth;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class SynthTest {
+
+    private static final double STEP = 1.0 / 44100;
+
+    private static void assertBlockMatchesValues(Synth synth, double position, int count) {
+        assertBlockMatchesValues(synth, position, STEP, count);
+    }
+
+    // also used by the other synth tests
+    static void assertBlockMatchesValues(Synth synth, double position, double step, int count) {
+        double[] block = new double[count + 2];
+        synth.getValues(block, 1, count, position, step);
+        assertThat("before block", block[0], is(0.0));
+        for (int i = 0; i < count; i++) {
+            double expected = synth.getValue(position + i * step);
+            assertEquals("sample " + i, expected, block[i + 1], 1e-9);
+        }
+        assertThat("after block", block[count + 1], is(0.0));
+    }
+
+    @Test
+    public void deterministic_instruments_block_matches_values() {
+        Synth[] synths = {
+                Instruments.silence, Instruments.sine, Instruments.glock, Instruments.clarinet,
+                Instruments.clarinetTongued, Instruments.bass, Instruments.bassSlide, Instruments.tongued,
+                Instruments.organ
+        };
+        for (Synth s : synths) {
+            assertBlockMatchesValues(s, 0, 1000);
+            assertBlockMatchesValues(s.getPitch(440), 0.25, 1000);
+        }
+    }
+
+    @Test
+    public void composition_block_matches_values() {
+        Synth s = new Synth.Composition(new Synth.Sine(2), new Synth.Exponential(0.9));
+        assertBlockMatchesValues(s, 0.5, 500);
+    }
+
+    @Test
+    public void sound_is_silent_after_duration() {
+        Sound s = new Sound(Instruments.sine.getPitch(440), 0.01);
+        double[] block = new double[882];
+        s.getValues(block, 0, block.length, 0, STEP);
+        for (int i = 442; i < block.length; i++) {
+            assertThat("sample " + i, block[i], is(0.0));
+        }
+        assertBlockMatchesValues(s, 0, 882);
+    }
+
+    private static double[] render(Synth synth, int count) {
+        double[] block = new double[count];
+        synth.getValues(block, 0, count, 0, STEP);
+        return block;
+    }
+
+    @Test
+    public void voices_with_the_same_seed_sound_the_same() {
+        Synth drum = Instruments.drumDecay2.getPitch(110);
+        double[] first = render(SynthCompiler.compile(drum.newVoice(42)), 2000);
+        assertArrayEquals(first, render(SynthCompiler.compile(drum.newVoice(42)), 2000), 0);
+        assertArrayEquals("uncompiled", first, render(drum.newVoice(42), 2000), 1e-9);
+        double[] other = render(drum.newVoice(43), 2000);
+        assertThat("different seeds differ", Arrays.equals(first, other), is(false));
+    }
+
+    @Test
+    public void voices_have_their_own_state() {
+        Synth prototype = Instruments.drum1;
+        Synth a = prototype.newVoice(7);
+        Synth b = prototype.newVoice(7);
+        assertThat(a, is(not(sameInstance(prototype))));
+        double[] alone = render(prototype.newVoice(7), 1000);
+        // interleaving two voices' blocks doesn't disturb either
+        double[] interleaved = new double[1000];
+        double[] other = new double[100];
+        for (int p = 0; p < 1000; p += 100) {
+            a.getValues(interleaved, p, 100, p * STEP, STEP);
+            b.getValues(other, 0, 100, p * STEP, STEP);
+        }
+        assertArrayEquals(alone, interleaved, 0);
+        assertArrayEquals(Arrays.copyOfRange(alone, 900, 1000), other, 0);
+    }
+
+    @Test
+    public void noise_is_in_range() {
+        double[] block = render(Instruments.noise.newVoice(1), 10000);
+        double sum = 0;
+        for (int i = 0; i < block.length; i++) {
+            assertThat("sample " + i + " in range", block[i] >= -1 && block[i] < 1, is(true));
+            sum += block[i];
+        }
+        assertEquals("mean", 0, sum / block.length, 0.05);
+    }
+
+    @Test
+    public void stateless_synths_are_their_own_voices() {
+        Synth s = Instruments.bassSlide.getPitch(55);
+        assertThat(s.newVoice(1), is(sameInstance(s)));
+        Sound sound = new Sound(SynthCompiler.compile(Instruments.glock.getPitch(440)), 0.5);
+        assertThat(sound.newVoice(1), is(sameInstance(sound)));
+    }
+
+    @Test
+    public void control_rate_block_matches_values() {
+        Synth s = new Synth.ControlRate(new Synth.Sine(3), 0.0007);
+        assertBlockMatchesValues(s, 0, 2000);
+        assertBlockMatchesValues(s, 0.123, 333);
+    }
+
+    @Test
+    public void control_rate_is_close_to_audio_rate() {
+        Synth decay = new Synth.Exponential(0.5);
+        double[] audio = render(decay, 44100);
+        double[] control = render(new Synth.ControlRate(decay, 32 * STEP), 44100);
+        for (int i = 0; i < audio.length; i++) {
+            assertEquals("sample " + i, audio[i], control[i], 1e-6);
+        }
+    }
+
+    @Test
+    public void control_rate_evaluates_only_grid_points() {
+        int[] values = {0};
+        Synth counted = new Synth() {
+            public double getValue(double position) {
+                values[0]++;
+                return position;
+            }
+        };
+        render(new Synth.ControlRate(counted, 32 * STEP), 3200);
+        assertThat(values[0], is(101));
+    }
+
+}
@@ -0,0 +1,50 @@
+package net.bobacus.soundgen.synth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WavetableTest {
+
+    private static final double[] AMPS = {1, 0.5, 0.25};
+
+    private static double exact(double[] amps, int partials, double phase) {
+        double c = 0;
+        for (int h = 0; h < partials; h++) {
+            c += amps[h] * Math.sin(2 * Math.PI * (h + 1) * phase);
+        }
+        return c;
+    }
+
+    @Test
+    public void value_matches_sum_of_sines() {
+        Wavetable w = new Wavetable(AMPS);
+        for (double p = -3; p < 3; p += 0.0137) {
+            assertEquals("phase " + p, exact(AMPS, AMPS.length, p), w.getValue(p), 1e-5);
+        }
+    }
+
+    @Test
+    public void block_matches_sum_of_sines() {
+        Wavetable w = new Wavetable(AMPS);
+        double inc = 440.0 / 44100;
+        double[] b = new double[44100];
+        w.getValues(b, 0, b.length, 0.3, inc);
+        for (int i = 0; i < b.length; i++) {
+            assertEquals("sample " + i, exact(AMPS, AMPS.length, 0.3 + i * inc), b[i], 1e-5);
+        }
+    }
+
+    @Test
+    public void block_drops_partials_above_nyquist() {
+        Wavetable w = new Wavetable(AMPS);
+        // the second partial is at 0.4 of the sample rate, the third at 0.6
+        double inc = 0.2;
+        double[] b = new double[100];
+        w.getValues(b, 0, b.length, 0, inc);
+        for (int i = 0; i < b.length; i++) {
+            assertEquals("sample " + i, exact(AMPS, 2, i * inc), b[i], 1e-5);
+        }
+    }
+
+}
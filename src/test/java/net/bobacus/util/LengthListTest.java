@@ -83,6 +83,61 @@ public class LengthListTest {
         assertThat("offset of 3", list.getOffsetForPosition(3), is(2));
     }
 
+    @Test
+    public void matches_linear_scan_with_zeroes() {
+        List<Integer> lengths = asList(0, 3, 0, 0, 1, 5, 0, 2, 0);
+        LengthList list = new LengthList(lengths);
+        for (int t = -2; t < 15; t++) {
+            int index = -1;
+            int sum = 0;
+            int start = 0;
+            for (int s : lengths) {
+                if (sum > t)
+                    break;
+                start = sum;
+                sum += s;
+                index++;
+            }
+            assertThat("index of " + t, list.getIndexForPosition(t), is(index));
+            assertThat("offset of " + t, list.getOffsetForPosition(t), is(t - start));
+        }
+    }
+
+    @Test
+    public void int_array_matches_list() {
+        LengthList fromList = new LengthList(asList(1, 2, 3, 4, 5, 6));
+        LengthList fromArray = new LengthList(new int[]{1, 2, 3, 4, 5, 6});
+        for (int t = -1; t < 30; t++) {
+            assertThat("index of " + t, fromArray.getIndexForPosition(t), is(fromList.getIndexForPosition(t)));
+            assertThat("offset of " + t, fromArray.getOffsetForPosition(t), is(fromList.getOffsetForPosition(t)));
+        }
+    }
+
+    @Test
+    public void cursor_matches_list_forwards_and_backwards() {
+        int[] lengths = new int[1000];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = (i * 7) % 13;
+        }
+        LengthList list = new LengthList(lengths);
+        LengthList.Cursor cursor = list.cursor();
+        int[] positions = {0, 1, 5, 6, 7, 100, 101, 3000, 5999, 6000, 20, 19, 7000, -1, 0, 2500};
+        for (int t : positions) {
+            assertThat("index of " + t, cursor.getIndexForPosition(t), is(list.getIndexForPosition(t)));
+            assertThat("offset of " + t, cursor.getOffsetForPosition(t), is(list.getOffsetForPosition(t)));
+        }
+        for (int t = 0; t < 6100; t += 3) {
+            assertThat("index of " + t, cursor.getIndexForPosition(t), is(list.getIndexForPosition(t)));
+        }
+    }
+
+    @Test
+    public void empty_cursor_gives_minus_1() {
+        LengthList.Cursor cursor = new LengthList(emptyList()).cursor();
+        assertThat("index", cursor.getIndexForPosition(3), is(-1));
+        assertThat("offset", cursor.getOffsetForPosition(3), is(3));
+    }
+
     /*
      * s: 1, 2, 3, 4, 5, 6
 	 * S: 0, 1, 3, 6, 10, 15, 21
@@ -104,4 +159,23 @@ public class LengthListTest {
             System.out.println("t = " + t + ", n = " + nl.getIndexForPosition(t) + ", offset = " + nl.getOffsetForPosition(t));
         }
     }
+
+    @Test
+    public void appended_lengths_match_list() {
+        LengthList fromList = new LengthList(asList(1, 2, 0, 4, 5, 6));
+        LengthList appended = new LengthList();
+        LengthList.Cursor cursor = appended.cursor();
+        for (int s : asList(1, 2, 0, 4, 5, 6)) {
+            appended.add(s);
+            // the cursor sees lengths added after it was created
+            cursor.getIndexForPosition((int) appended.getTotalLength());
+        }
+        assertThat("size", appended.size(), is(6));
+        assertThat("length 3", appended.getLength(3), is(4));
+        assertThat("total", appended.getTotalLength(), is(18L));
+        for (int t = -1; t < 25; t++) {
+            assertThat("index of " + t, appended.getIndexForPosition(t), is(fromList.getIndexForPosition(t)));
+            assertThat("offset of " + t, appended.getOffsetForPosition(t), is(fromList.getOffsetForPosition(t)));
+        }
+    }
 }